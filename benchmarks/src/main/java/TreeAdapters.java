@@ -0,0 +1,80 @@
+import exam.bench.IntTree;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * IntTree over each structure under benchmark, see exam.bench.Trees
+ *
+ * Lives in the default package, next to the trees it wraps. Maps store the key as
+ * its own value, so no value objects are allocated.
+ */
+public class TreeAdapters {
+
+    public static IntTree create(String name) {
+        if (name.startsWith("BTree-")) return btree(Integer.parseInt(name.substring("BTree-".length())));
+        if (name.startsWith("G_BST-")) return bst(G_BST.Balancing.valueOf(name.substring("G_BST-".length())));
+        switch (name) {
+            case "G_AVL": return avl();
+            case "G_BST": return bst(G_BST.Balancing.NONE);
+            case "TreeMap": return navigable(new TreeMap<>());
+            case "ConcurrentSkipListMap": return navigable(new ConcurrentSkipListMap<>());
+            default: throw new IllegalArgumentException("unknown structure " + name);
+        }
+    }
+
+    // BTree keeps duplicates; the workloads only insert absent keys into it
+    static IntTree btree(int t) {
+        BTree tree = new BTree(t);
+        return new IntTree() {
+            public void put(Integer key) { tree.insert(key); }
+            public boolean contains(Integer key) { return tree.contains(key); }
+            public void remove(Integer key) { tree.remove(key); }
+            public int successor(Integer key) { return tree.successor(key); }
+        };
+    }
+
+    // G_AVL has no successor; it is found by rank: select(number of keys <= key)
+    static IntTree avl() {
+        G_AVL<Integer, Integer> tree = new G_AVL<>();
+        return new IntTree() {
+            public void put(Integer key) { tree.put(key, key); }
+            public boolean contains(Integer key) { return tree.get(key) != null; }
+            public void remove(Integer key) { tree.remove(key); }
+
+            public int successor(Integer key) {
+                int r = tree.rank(key);
+                if (r < tree.size() && tree.select(r).equals(key)) r++;
+                return r < tree.size() ? tree.select(r) : 0;
+            }
+        };
+    }
+
+    static IntTree bst(G_BST.Balancing balancing) {
+        G_BST<Integer, Integer> tree = new G_BST<>(balancing);
+        return new IntTree() {
+            public void put(Integer key) { tree.put(key, key); }
+            public boolean contains(Integer key) { return tree.contains(key); }
+            public void remove(Integer key) { tree.delete(key); }
+
+            public int successor(Integer key) {
+                G_BST<Integer, Integer>.Cursor c = tree.ascendingAfter(key);
+                return c.hasNext() ? c.next() : 0;
+            }
+        };
+    }
+
+    static IntTree navigable(NavigableMap<Integer, Integer> map) {
+        return new IntTree() {
+            public void put(Integer key) { map.put(key, key); }
+            public boolean contains(Integer key) { return map.containsKey(key); }
+            public void remove(Integer key) { map.remove(key); }
+
+            public int successor(Integer key) {
+                Integer s = map.higherKey(key);
+                return s == null ? 0 : s;
+            }
+        };
+    }
+}
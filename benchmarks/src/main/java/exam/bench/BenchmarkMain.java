@@ -0,0 +1,47 @@
+package exam.bench;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar: the JMH command line, with the GC profiler and JSON
+ * results on by default
+ *
+ * Results go to jmh-result.json unless -rf / -rff say otherwise. Every option of the
+ * JMH runner applies, for instance
+ *   java -jar benchmarks/target/benchmarks.jar Lookup -p structure=BTree-16,TreeMap
+ *   java -jar benchmarks/target/benchmarks.jar -p distribution=zipfian -rff zipf.json
+ *   java -jar benchmarks/target/benchmarks.jar -l
+ */
+public class BenchmarkMain {
+    static final String RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp()) {
+            cmd.showHelp();
+            return;
+        }
+        if (cmd.shouldList() || cmd.shouldListWithParams()) {
+            new Runner(cmd).list();
+            return;
+        }
+        if (cmd.shouldListProfilers() || cmd.shouldListResultFormats()) { // nothing to add, let JMH answer
+            Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+        boolean gc = cmd.getProfilers().stream()
+                .anyMatch(p -> p.getKlass().equals("gc") || p.getKlass().equals(GCProfiler.class.getName()));
+        if (!gc) options.addProfiler(GCProfiler.class);
+        if (!cmd.getResultFormat().hasValue()) options.resultFormat(ResultFormatType.JSON);
+        if (!cmd.getResult().hasValue()) options.result(RESULT_FILE);
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,25 @@
+package exam.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Inserting absent keys: BTree.insert, G_AVL.put, G_BST.put, TreeMap.put, see
+ * UpdateBenchmark
+ */
+public class InsertBenchmark extends UpdateBenchmark {
+
+    @Setup(Level.Invocation)
+    public void fill() {
+        tree = newTree(false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public IntTree insert() {
+        for (Integer k : batch) tree.put(k);
+        return tree;
+    }
+}
@@ -0,0 +1,24 @@
+package exam.bench;
+
+/**
+ * The operations the benchmarks run, over Integer keys
+ *
+ * The trees live in the default package, which classes in a named package (as JMH
+ * requires for benchmarks) cannot refer to, so the benchmarks see them through this
+ * interface. The implementations are in the default package class TreeAdapters and
+ * are created by Trees.create. Keys are passed boxed, so that allocation reported by
+ * the GC profiler is the structure's own.
+ */
+public interface IntTree {
+
+    // Adds key, or replaces its value if present
+    void put(Integer key);
+
+    boolean contains(Integer key);
+
+    // Removes key if present
+    void remove(Integer key);
+
+    // Smallest key strictly greater than key, or 0 if there is none (as BTree.successor)
+    int successor(Integer key);
+}
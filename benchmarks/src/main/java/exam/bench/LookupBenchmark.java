@@ -0,0 +1,73 @@
+package exam.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-only operations on a tree of size keys: contains (get for G_AVL) and successor
+ *
+ * The tree is filled once per fork, in random order. Each operation takes the next
+ * key of a precomputed sequence following distribution, so every probe is a hit;
+ * successor is asked for the key after a present one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+    private static final int PROBES = 1 << 20; // power of two, see nextProbe
+
+    @Param({"BTree-2", "BTree-16", "BTree-64", "G_AVL", "G_BST", "G_BST-TREAP", "TreeMap", "ConcurrentSkipListMap"})
+    public String structure;
+
+    @Param({"random", "sorted", "zipfian"})
+    public String distribution;
+
+    @Param({"65536"})
+    public int size;
+
+    private IntTree tree;
+    private Integer[] probes;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(Workload.SEED);
+        Integer[] keys = Workload.keys(size, rnd);
+        tree = Trees.create(structure);
+        for (Integer k : Workload.shuffled(keys, rnd)) tree.put(k);
+        int[] seq = Workload.sequence(distribution, size, PROBES, rnd);
+        probes = new Integer[PROBES];
+        for (int i = 0; i < PROBES; i++) probes[i] = keys[seq[i]];
+    }
+
+    private Integer nextProbe() {
+        Integer k = probes[next];
+        next = (next + 1) & (PROBES - 1);
+        return k;
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return tree.contains(nextProbe());
+    }
+
+    @Benchmark
+    public int successor() {
+        return tree.successor(nextProbe());
+    }
+}
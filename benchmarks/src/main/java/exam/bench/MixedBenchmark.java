@@ -0,0 +1,82 @@
+package exam.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mixed reads and writes on one tree
+ *
+ * The keys are 2 * size distinct ints, every other one in the tree at the start. Each
+ * operation picks a key following distribution; with probability readPercent it is a
+ * contains, otherwise a write that removes the key if it is in the tree and puts it if
+ * not. The tree so stays around size keys, reads hit about half of the time, and
+ * BTree, which keeps duplicates, is never given a key it already holds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MixedBenchmark {
+    private static final int OPS = 1 << 20; // power of two, see op
+
+    @Param({"BTree-2", "BTree-16", "BTree-64", "G_AVL", "G_BST", "G_BST-TREAP", "TreeMap", "ConcurrentSkipListMap"})
+    public String structure;
+
+    @Param({"random", "sorted", "zipfian"})
+    public String distribution;
+
+    @Param({"50", "95"})
+    public int readPercent;
+
+    @Param({"65536"})
+    public int size;
+
+    private IntTree tree;
+    private Integer[] keys;
+    private boolean[] present; // present[i]: keys[i] is in the tree
+    private int[] ops;         // index of the key, bit 31 set for a write
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(Workload.SEED);
+        keys = Workload.keys(2 * size, rnd);
+        present = new boolean[keys.length];
+        tree = Trees.create(structure);
+        Integer[] even = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            present[2 * i] = true;
+            even[i] = keys[2 * i];
+        }
+        for (Integer k : Workload.shuffled(even, rnd)) tree.put(k);
+        ops = Workload.sequence(distribution, keys.length, OPS, rnd);
+        for (int i = 0; i < OPS; i++) {
+            if (rnd.nextInt(100) >= readPercent) ops[i] |= Integer.MIN_VALUE;
+        }
+    }
+
+    @Benchmark
+    public boolean op() {
+        int op = ops[next];
+        next = (next + 1) & (OPS - 1);
+        int i = op & Integer.MAX_VALUE;
+        if (op >= 0) return tree.contains(keys[i]);
+        if (present[i]) tree.remove(keys[i]);
+        else tree.put(keys[i]);
+        return present[i] = !present[i];
+    }
+}
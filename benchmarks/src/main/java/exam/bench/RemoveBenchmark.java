@@ -0,0 +1,25 @@
+package exam.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Removing present keys: BTree.remove, G_AVL.remove, G_BST.delete, TreeMap.remove,
+ * see UpdateBenchmark
+ */
+public class RemoveBenchmark extends UpdateBenchmark {
+
+    @Setup(Level.Invocation)
+    public void fill() {
+        tree = newTree(true);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public IntTree remove() {
+        for (Integer k : batch) tree.remove(k);
+        return tree;
+    }
+}
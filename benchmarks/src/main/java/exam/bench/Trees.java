@@ -0,0 +1,36 @@
+package exam.bench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Creates the structures under benchmark by name
+ *
+ * Names: BTree-&lt;t&gt; (minimum degree t), G_AVL, G_BST or G_BST-&lt;balancing&gt; (NONE,
+ * SCAPEGOAT, TREAP), TreeMap, ConcurrentSkipListMap.
+ */
+public final class Trees {
+    private static final Method CREATE;
+
+    static {
+        try { // reflection is the only way into the default package from here
+            CREATE = Class.forName("TreeAdapters").getMethod("create", String.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Trees() {
+    }
+
+    public static IntTree create(String name) {
+        try {
+            return (IntTree) CREATE.invoke(null, name);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
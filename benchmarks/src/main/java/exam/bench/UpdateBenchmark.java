@@ -0,0 +1,89 @@
+package exam.bench;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Common state of InsertBenchmark and RemoveBenchmark
+ *
+ * An update changes the tree, so it cannot be repeated on the same tree for a whole
+ * iteration. Instead each invocation gets a freshly filled tree (built outside the
+ * timing) and applies BATCH updates to it; the score is the time per update.
+ *
+ * The tree holds size keys in random order; the batch is BATCH further keys, in the
+ * order given by distribution:
+ *   random - keys anywhere in the range of the tree, in random order
+ *   sorted - keys above all the others, in increasing order (appending)
+ * Zipfian skew needs repeated keys, which an insert-only batch does not have; it is
+ * covered by LookupBenchmark and MixedBenchmark.
+ *
+ * The GC profiler counts the allocations of the whole iteration, including the fill,
+ * so gc.alloc.rate.norm here is dominated by building the tree; MixedBenchmark gives
+ * the allocation of the writes themselves.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public abstract class UpdateBenchmark {
+    static final int BATCH = 1 << 14;
+
+    @Param({"BTree-2", "BTree-16", "BTree-64", "G_AVL", "G_BST", "G_BST-TREAP", "TreeMap", "ConcurrentSkipListMap"})
+    public String structure;
+
+    @Param({"random", "sorted"})
+    public String distribution;
+
+    @Param({"65536"})
+    public int size;
+
+    Integer[] keys;  // in the tree before the batch, in insertion order
+    Integer[] batch; // in update order
+    IntTree tree;
+
+    @Setup
+    public void keys() {
+        Random rnd = new Random(Workload.SEED);
+        Integer[] all = Workload.keys(size + BATCH, rnd);
+        switch (distribution) {
+            case "random":
+                all = Workload.shuffled(all, rnd);
+                batch = Arrays.copyOfRange(all, 0, BATCH);
+                keys = Arrays.copyOfRange(all, BATCH, all.length);
+                break;
+            case "sorted":
+                batch = Arrays.copyOfRange(all, size, all.length);
+                keys = Workload.shuffled(Arrays.copyOfRange(all, 0, size), rnd);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown distribution " + distribution);
+        }
+    }
+
+    // Fresh tree with the keys, and the batch too if withBatch
+    IntTree newTree(boolean withBatch) {
+        IntTree t = Trees.create(structure);
+        if (withBatch) {
+            Integer[] all = Arrays.copyOf(keys, size + BATCH);
+            System.arraycopy(batch, 0, all, size, BATCH);
+            for (Integer k : Workload.shuffled(all, new Random(Workload.SEED))) t.put(k);
+        } else {
+            for (Integer k : keys) t.put(k);
+        }
+        return t;
+    }
+}
@@ -0,0 +1,89 @@
+package exam.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Keys and access sequences for the benchmarks
+ *
+ * Distributions of the key an operation touches, over n keys in increasing order:
+ *   random  - uniform
+ *   sorted  - ascending, wrapping around
+ *   zipfian - YCSB-style Zipf with exponent 0.99 over a random permutation of the keys,
+ *             so a few keys get most operations and the hot keys are spread out
+ */
+public final class Workload {
+    public static final long SEED = 42;
+
+    private static final double ZIPF_THETA = 0.99;
+
+    private Workload() {
+    }
+
+    // n distinct random ints in increasing order, boxed once up front
+    public static Integer[] keys(int n, Random rnd) {
+        int[] k = rnd.ints().distinct().limit(n).sorted().toArray();
+        Integer[] boxed = new Integer[n];
+        for (int i = 0; i < n; i++) boxed[i] = k[i];
+        return boxed;
+    }
+
+    public static <T> T[] shuffled(T[] a, Random rnd) {
+        T[] s = a.clone();
+        for (int i = s.length - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            T tmp = s[i];
+            s[i] = s[j];
+            s[j] = tmp;
+        }
+        return s;
+    }
+
+    // length indices into n keys, following distribution
+    public static int[] sequence(String distribution, int n, int length, Random rnd) {
+        int[] seq = new int[length];
+        switch (distribution) {
+            case "random":
+                for (int i = 0; i < length; i++) seq[i] = rnd.nextInt(n);
+                break;
+            case "sorted":
+                for (int i = 0; i < length; i++) seq[i] = i % n;
+                break;
+            case "zipfian":
+                zipfian(seq, n, rnd);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown distribution " + distribution);
+        }
+        return seq;
+    }
+
+    // Gray et al., "Quickly generating billion-record synthetic databases", as in YCSB
+    private static void zipfian(int[] seq, int n, Random rnd) {
+        double zetan = zeta(n), zeta2 = zeta(2);
+        double alpha = 1 / (1 - ZIPF_THETA);
+        double eta = (1 - Math.pow(2.0 / n, 1 - ZIPF_THETA)) / (1 - zeta2 / zetan);
+        int[] permutation = new int[n]; // rank r is key permutation[r]
+        Arrays.setAll(permutation, i -> i);
+        for (int i = n - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int tmp = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = tmp;
+        }
+        for (int i = 0; i < seq.length; i++) {
+            double u = rnd.nextDouble(), uz = u * zetan;
+            int rank;
+            if (uz < 1) rank = 0;
+            else if (uz < 1 + Math.pow(0.5, ZIPF_THETA)) rank = 1;
+            else rank = Math.min(n - 1, (int) (n * Math.pow(eta * u - eta + 1, alpha)));
+            seq[i] = permutation[rank];
+        }
+    }
+
+    private static double zeta(int n) {
+        double sum = 0;
+        for (int i = 1; i <= n; i++) sum += 1 / Math.pow(i, ZIPF_THETA);
+        return sum;
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.Random;
+
+
+/**
+ * Put / remove throughput of G_AVL's iterative update path against the recursive one
+ *
+ * Each run fills an empty map with n keys, then removes them all again, for random
+ * keys and for ascending keys (which keep the rotations on the right spine busy).
+ * Each variant runs five rounds; the first two are warm-up, the best of the rest is shown.
+ *
+ * Usage: java AVLUpdateBenchmark [entries]
+ */
+public class AVLUpdateBenchmark {
+
+    interface Updates {
+        void put(Integer key);
+        void remove(Integer key);
+    }
+
+    static Updates iterative(G_AVL<Integer, Integer> map) {
+        return new Updates() {
+            public void put(Integer key) { map.put(key, key); }
+            public void remove(Integer key) { map.remove(key); }
+        };
+    }
+
+    static Updates recursive(G_AVL<Integer, Integer> map) {
+        return new Updates() {
+            public void put(Integer key) { map.putRecursive(key, key); }
+            public void remove(Integer key) { map.removeRecursive(key); }
+        };
+    }
+
+    // Best ns/op of put and of remove over a few fill / drain rounds, after two warm-up rounds
+    static double[] measure(boolean recursive, Integer[] keys) {
+        double put = Double.MAX_VALUE, remove = Double.MAX_VALUE;
+        for (int r = 0; r < 5; r++) {
+            G_AVL<Integer, Integer> map = new G_AVL<>();
+            Updates u = recursive ? recursive(map) : iterative(map);
+            long t0 = System.nanoTime();
+            for (Integer k : keys) u.put(k);
+            long t1 = System.nanoTime();
+            for (Integer k : keys) u.remove(k);
+            long t2 = System.nanoTime();
+            if (map.size() != 0) throw new IllegalStateException("map not drained");
+            if (r >= 2) {
+                put = Math.min(put, (t1 - t0) / (double) keys.length);
+                remove = Math.min(remove, (t2 - t1) / (double) keys.length);
+            }
+        }
+        return new double[]{put, remove};
+    }
+
+    static void run(String name, Integer[] keys) {
+        double[] iterative = measure(false, keys);
+        double[] recursive = measure(true, keys);
+        System.out.printf("%-10s %14.1f %14.1f %14.1f %14.1f%n", name,
+                iterative[0], recursive[0], iterative[1], recursive[1]);
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Integer[] random = new Integer[n];
+        Random rnd = new Random(42);
+        for (int i = 0; i < n; i++) random[i] = rnd.nextInt();
+        Integer[] ascending = new Integer[n];
+        for (int i = 0; i < n; i++) ascending[i] = i;
+
+        System.out.println("entries=" + n + " (ns/op)");
+        System.out.printf("%-10s %14s %14s %14s %14s%n", "keys", "put iter", "put rec", "remove iter", "remove rec");
+        run("random", random);
+        run("ascending", ascending);
+    }
+}
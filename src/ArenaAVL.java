@@ -0,0 +1,286 @@
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * AVL map whose nodes live in parallel arrays instead of separate objects
+ *
+ * A node is an int index; its key, value, children and height are entries of the
+ * arrays keys, values, left, right and height. The whole tree is five arrays however
+ * many entries it holds, so the garbage collector has two reference arrays to scan
+ * instead of one object per entry, and a node costs 20 bytes of array slots instead of
+ * a 40 byte object (with compressed references). Slots freed by remove are chained in
+ * a free list through left[] and reused by later puts; the arrays grow by doubling.
+ *
+ * Index 0 is the null node: its height is 0, so leaves have height 1 and height()
+ * needs no null check.
+ *
+ * Same API as IntAVL / G_AVL for the basic operations: put, get, containsKey, remove,
+ * size, forEach, displayLevels.
+ */
+public class ArenaAVL<K extends Comparable<K>, V> {
+    private static final int NIL = 0;
+
+    private Object[] keys;
+    private Object[] values;
+    private int[] left;
+    private int[] right;
+    private int[] height;
+
+    private int root = NIL;
+    private int size;
+    private int used = 1;  // slots handed out so far, slot 0 is NIL
+    private int free = NIL; // head of the list of released slots, linked through left[]
+    private int[] path = new int[32]; // reusable stack for the path from the root
+
+    public ArenaAVL() {
+        this(16);
+    }
+
+    public ArenaAVL(int initialCapacity) {
+        int n = Math.max(2, initialCapacity + 1);
+        keys = new Object[n];
+        values = new Object[n];
+        left = new int[n];
+        right = new int[n];
+        height = new int[n];
+    }
+
+    @SuppressWarnings("unchecked")
+    private K key(int x) {
+        return (K) keys[x];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int x) {
+        return (V) values[x];
+    }
+
+    private int allocate(K key, V value) {
+        int x;
+        if (free != NIL) {
+            x = free;
+            free = left[x];
+        } else {
+            if (used == keys.length) grow();
+            x = used++;
+        }
+        keys[x] = key;
+        values[x] = value;
+        left[x] = NIL;
+        right[x] = NIL;
+        height[x] = 1;
+        return x;
+    }
+
+    private void release(int x) {
+        keys[x] = null; // let the key and value be collected
+        values[x] = null;
+        right[x] = NIL;
+        height[x] = 0;
+        left[x] = free;
+        free = x;
+    }
+
+    private void grow() {
+        int n = keys.length * 2;
+        keys = Arrays.copyOf(keys, n);
+        values = Arrays.copyOf(values, n);
+        left = Arrays.copyOf(left, n);
+        right = Arrays.copyOf(right, n);
+        height = Arrays.copyOf(height, n);
+    }
+
+    private void update(int x) {
+        height[x] = 1 + Math.max(height[left[x]], height[right[x]]);
+    }
+
+    private int rotateLeft(int x) {
+        int y = right[x];
+        right[x] = left[y];
+        left[y] = x;
+        update(x);
+        update(y);
+        return y;
+    }
+
+    private int rotateRight(int x) {
+        int y = left[x];
+        left[x] = right[y];
+        right[y] = x;
+        update(x);
+        update(y);
+        return y;
+    }
+
+    // Balances the tree by performing rotations
+    private int balance(int x) {
+        update(x);
+        int bf = height[left[x]] - height[right[x]];
+        if (bf > 1) {
+            int l = left[x];
+            if (height[left[l]] < height[right[l]]) left[x] = rotateLeft(l);  // Left-Right case
+            return rotateRight(x);                                               // Left-Left case
+        }
+        if (bf < -1) {
+            int r = right[x];
+            if (height[left[r]] > height[right[r]]) right[x] = rotateRight(r); // Right-Left case
+            return rotateLeft(x);                                                // Right-Right case
+        }
+        return x;
+    }
+
+    private void push(int i, int x) {
+        if (i == path.length) path = Arrays.copyOf(path, 2 * i);
+        path[i] = x;
+    }
+
+    // Makes y take the place of x below parent (the root when parent is NIL)
+    private void replaceChild(int parent, int x, int y) {
+        if (parent == NIL) root = y;
+        else if (left[parent] == x) left[parent] = y;
+        else right[parent] = y;
+    }
+
+    // Rebalances path[0 .. top) bottom up, until a subtree keeps its height
+    private void retrace(int top) {
+        for (int i = top - 1; i >= 0; i--) {
+            int x = path[i];
+            int oldHeight = height[x];
+            int y = balance(x);
+            if (y != x) replaceChild(i == 0 ? NIL : path[i - 1], x, y);
+            if (height[y] == oldHeight) return;
+        }
+    }
+
+    // Put (insert or update)
+    public void put(K key, V value) {
+        int top = 0;
+        int x = root;
+        int cmp = 0;
+        while (x != NIL) {
+            cmp = key.compareTo(key(x));
+            if (cmp == 0) {
+                values[x] = value;
+                return;
+            }
+            push(top++, x);
+            x = cmp < 0 ? left[x] : right[x];
+        }
+        int added = allocate(key, value);
+        if (top == 0) root = added;
+        else if (cmp < 0) left[path[top - 1]] = added;
+        else right[path[top - 1]] = added;
+        size++;
+        retrace(top);
+    }
+
+    private int find(K key) {
+        int x = root;
+        while (x != NIL) {
+            int cmp = key.compareTo(key(x));
+            if (cmp == 0) return x;
+            x = cmp < 0 ? left[x] : right[x];
+        }
+        return NIL;
+    }
+
+    // Get
+    public V get(K key) {
+        int x = find(key);
+        return x == NIL ? null : value(x);
+    }
+
+    public boolean containsKey(K key) {
+        return find(key) != NIL;
+    }
+
+    // Remove
+    public void remove(K key) {
+        int top = 0;
+        int x = root;
+        while (x != NIL) {
+            int cmp = key.compareTo(key(x));
+            if (cmp == 0) break;
+            push(top++, x);
+            x = cmp < 0 ? left[x] : right[x];
+        }
+        if (x == NIL) return;
+
+        int removed = x; // slot unlinked from the tree: x itself, or its in-order predecessor
+        if (left[x] != NIL && right[x] != NIL) {
+            push(top++, x);
+            removed = left[x];
+            while (right[removed] != NIL) {
+                push(top++, removed);
+                removed = right[removed];
+            }
+            keys[x] = keys[removed];
+            values[x] = values[removed];
+        }
+        int child = left[removed] != NIL ? left[removed] : right[removed];
+        replaceChild(top == 0 ? NIL : path[top - 1], removed, child);
+        release(removed);
+        size--;
+        retrace(top);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Number of levels, 0 for an empty map
+    public int height() {
+        return height[root];
+    }
+
+    // Slots the arrays can hold before growing
+    public int capacity() {
+        return keys.length - 1;
+    }
+
+    // Entries in key order
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        int[] stack = new int[height[root]];
+        int top = 0;
+        int x = root;
+        while (x != NIL || top > 0) {
+            while (x != NIL) {
+                stack[top++] = x;
+                x = left[x];
+            }
+            x = stack[--top];
+            action.accept(key(x), value(x));
+            x = right[x];
+        }
+    }
+
+    // Level order, one node per "(key, value)"
+    public void displayLevels() {
+        if (root == NIL) return;
+        int[] queue = new int[size];
+        int head = 0, tail = 0;
+        queue[tail++] = root;
+        while (head < tail) {
+            int x = queue[head++];
+            System.out.print("(" + keys[x] + ", " + values[x] + ") ");
+            if (left[x] != NIL) queue[tail++] = left[x];
+            if (right[x] != NIL) queue[tail++] = right[x];
+        }
+        System.out.println();
+    }
+
+    public static void main(String[] args) {
+        ArenaAVL<Integer, String> avl = new ArenaAVL<>();
+        for (int k : new int[]{50, 30, 70, 20, 40, 60, 80}) avl.put(k, "v" + k);
+        avl.displayLevels();
+        avl.remove(50);
+        avl.remove(20);
+        avl.put(55, "v55"); // reuses a released slot
+        avl.displayLevels();
+        System.out.println("size " + avl.size() + ", capacity " + avl.capacity() + ", get(40) = " + avl.get(40));
+    }
+}
@@ -0,0 +1,225 @@
+import java.util.Arrays;
+
+/**
+ * Unbalanced binary search tree whose nodes live in parallel arrays, see ArenaAVL
+ *
+ * A node is an int index into keys, values, left and right; index 0 is the null node.
+ * Slots freed by delete are chained in a free list through left[] and reused by later
+ * puts. Every operation is iterative, so a degenerate tree costs time but never
+ * overflows the stack.
+ *
+ * Same API as G_BST for the basic operations: put, get, contains, delete, min, max,
+ * height, size, inorder.
+ */
+public class ArenaBST<K extends Comparable<K>, V> {
+    private static final int NIL = 0;
+
+    private Object[] keys;
+    private Object[] values;
+    private int[] left;
+    private int[] right;
+
+    private int root = NIL;
+    private int size;
+    private int used = 1;   // slots handed out so far, slot 0 is NIL
+    private int free = NIL; // head of the list of released slots, linked through left[]
+
+    public ArenaBST() {
+        this(16);
+    }
+
+    public ArenaBST(int initialCapacity) {
+        int n = Math.max(2, initialCapacity + 1);
+        keys = new Object[n];
+        values = new Object[n];
+        left = new int[n];
+        right = new int[n];
+    }
+
+    @SuppressWarnings("unchecked")
+    private K key(int x) {
+        return (K) keys[x];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int x) {
+        return (V) values[x];
+    }
+
+    private int allocate(K key, V value) {
+        int x;
+        if (free != NIL) {
+            x = free;
+            free = left[x];
+        } else {
+            if (used == keys.length) grow();
+            x = used++;
+        }
+        keys[x] = key;
+        values[x] = value;
+        left[x] = NIL;
+        right[x] = NIL;
+        return x;
+    }
+
+    private void release(int x) {
+        keys[x] = null; // let the key and value be collected
+        values[x] = null;
+        right[x] = NIL;
+        left[x] = free;
+        free = x;
+    }
+
+    private void grow() {
+        int n = keys.length * 2;
+        keys = Arrays.copyOf(keys, n);
+        values = Arrays.copyOf(values, n);
+        left = Arrays.copyOf(left, n);
+        right = Arrays.copyOf(right, n);
+    }
+
+    // Put method
+    public void put(K key, V value) {
+        int parent = NIL;
+        int x = root;
+        int cmp = 0;
+        while (x != NIL) {
+            cmp = key(x).compareTo(key);
+            if (cmp == 0) {
+                values[x] = value;
+                return;
+            }
+            parent = x;
+            x = cmp < 0 ? right[x] : left[x];  // go right if x.key < key
+        }
+        int added = allocate(key, value);
+        if (parent == NIL) root = added;
+        else if (cmp < 0) right[parent] = added;
+        else left[parent] = added;
+        size++;
+    }
+
+    private int find(K key) {
+        int x = root;
+        while (x != NIL) {
+            int cmp = key(x).compareTo(key);
+            if (cmp == 0) return x;
+            x = cmp < 0 ? right[x] : left[x];
+        }
+        return NIL;
+    }
+
+    public V get(K key) {
+        int x = find(key);
+        return x == NIL ? null : value(x);
+    }
+
+    // Contains method
+    public boolean contains(K key) {
+        return find(key) != NIL;
+    }
+
+    // Delete method
+    public void delete(K key) {
+        int parent = NIL;
+        int x = root;
+        while (x != NIL) {
+            int cmp = key(x).compareTo(key);
+            if (cmp == 0) break;
+            parent = x;
+            x = cmp > 0 ? left[x] : right[x];
+        }
+        if (x == NIL) return;
+
+        if (left[x] != NIL && right[x] != NIL) {
+            // Node with two children: replace with predecessor, which has no right child
+            int predParent = x;
+            int pred = left[x];
+            while (right[pred] != NIL) {
+                predParent = pred;
+                pred = right[pred];
+            }
+            keys[x] = keys[pred];
+            values[x] = values[pred];
+            parent = predParent;
+            x = pred;
+        }
+        int child = left[x] != NIL ? left[x] : right[x];
+        if (parent == NIL) root = child;
+        else if (left[parent] == x) left[parent] = child;
+        else right[parent] = child;
+        release(x);
+        size--;
+    }
+
+    // Find minimum key
+    public K min() {
+        if (root == NIL) return null;
+        int x = root;
+        while (left[x] != NIL) x = left[x];
+        return key(x);
+    }
+
+    // Find maximum key
+    public K max() {
+        if (root == NIL) return null;
+        int x = root;
+        while (right[x] != NIL) x = right[x];
+        return key(x);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Slots the arrays can hold before growing
+    public int capacity() {
+        return keys.length - 1;
+    }
+
+    // Number of levels, counted level by level with an index queue
+    public int height() {
+        if (root == NIL) return 0;
+        int[] queue = new int[size];
+        int head = 0, tail = 0, h = 0;
+        queue[tail++] = root;
+        while (head < tail) {
+            h++;
+            for (int end = tail; head < end; head++) {
+                int x = queue[head];
+                if (left[x] != NIL) queue[tail++] = left[x];
+                if (right[x] != NIL) queue[tail++] = right[x];
+            }
+        }
+        return h;
+    }
+
+    // Inorder traversal
+    public void inorder() {
+        int[] stack = new int[Math.max(1, size)];
+        int top = 0;
+        int x = root;
+        while (x != NIL || top > 0) {
+            while (x != NIL) {
+                stack[top++] = x;
+                x = left[x];
+            }
+            x = stack[--top];
+            System.out.print(keys[x] + " " + values[x] + " ");
+            x = right[x];
+        }
+        System.out.println();
+    }
+
+    public static void main(String[] args) {
+        ArenaBST<Integer, String> bst = new ArenaBST<>();
+        for (int k : new int[]{5, 3, 7, 2, 4, 6, 8}) bst.put(k, "v" + k);
+        bst.inorder();
+        bst.delete(3);
+        bst.delete(5);
+        bst.put(1, "v1"); // reuses a released slot
+        bst.inorder();
+        System.out.println("min " + bst.min() + ", max " + bst.max() + ", height " + bst.height()
+                + ", size " + bst.size() + ", capacity " + bst.capacity());
+    }
+}
@@ -0,0 +1,78 @@
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+
+/**
+ * Memory per entry, get latency and full GC time of the arena trees against the
+ * object based ones: G_AVL against ArenaAVL, G_BST against ArenaBST
+ *
+ * Memory is the growth of the used heap (after GC) while the map is alive; the boxed
+ * keys and the shared value are allocated up front, so only the tree structure is
+ * counted. GC time is the duration of System.gc() with the map alive, most of which
+ * is spent tracing the live nodes. Keys are random, so G_BST and ArenaBST stay shallow.
+ *
+ * Usage: java ArenaBenchmark [entries]
+ */
+public class ArenaBenchmark {
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static long sink;
+
+    // Builds a map with build, which returns its contains, then measures it
+    static void run(String name, Integer[] keys, Integer[] probes, Supplier<Predicate<Integer>> build) {
+        long before = usedHeap();
+        Predicate<Integer> contains = build.get();
+        long bytes = usedHeap() - before;
+
+        long t0 = System.nanoTime();
+        System.gc();
+        double gcMs = (System.nanoTime() - t0) / 1e6;
+
+        for (int r = 0; r < 2; r++) for (Integer k : probes) sink += contains.test(k) ? 1 : 0;
+        t0 = System.nanoTime();
+        for (int r = 0; r < 3; r++) for (Integer k : probes) sink += contains.test(k) ? 1 : 0;
+        double ns = (System.nanoTime() - t0) / (3.0 * probes.length);
+        System.out.printf("%-12s %14.1f %12.1f %12.1f%n", name, (double) bytes / keys.length, ns, gcMs);
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random rnd = new Random(42);
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) keys[i] = rnd.nextInt();
+        Integer[] probes = new Integer[1 << 20];
+        for (int i = 0; i < probes.length; i++) probes[i] = keys[rnd.nextInt(n)];
+        Object value = "v"; // one shared value, so only the map structure is measured
+
+        System.out.printf("%-12s %14s %12s %12s%n", "map", "bytes/entry", "get ns/op", "full GC ms");
+
+        run("G_AVL", keys, probes, () -> {
+            G_AVL<Integer, Object> m = new G_AVL<>();
+            for (Integer k : keys) m.put(k, value);
+            return k -> m.get(k) != null;
+        });
+        run("ArenaAVL", keys, probes, () -> {
+            ArenaAVL<Integer, Object> m = new ArenaAVL<>();
+            for (Integer k : keys) m.put(k, value);
+            return m::containsKey;
+        });
+        run("G_BST", keys, probes, () -> {
+            G_BST<Integer, Object> m = new G_BST<>();
+            for (Integer k : keys) m.put(k, value);
+            return m::contains;
+        });
+        run("ArenaBST", keys, probes, () -> {
+            ArenaBST<Integer, Object> m = new ArenaBST<>();
+            for (Integer k : keys) m.put(k, value);
+            return m::contains;
+        });
+
+        if (sink == 42) System.out.println(); // keep the results alive
+    }
+}
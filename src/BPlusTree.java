@@ -0,0 +1,272 @@
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Queue;
+import java.util.function.IntConsumer;
+
+
+/**
+ * B+Tree with int keys
+ *
+ * All keys live in the leaves, which are chained to their neighbours by sibling
+ * pointers; internal nodes only hold separators (the first key of the right part of
+ * a split leaf is copied up). A child i of an internal node holds the keys k with
+ * key[i-1] <= k < key[i].
+ *
+ * Range queries descend once to the leaf holding the lower bound and then follow the
+ * leaf chain, so a scan over k keys costs O(log n + k) instead of one descent per key,
+ * and the cursor returned by range does not allocate per element.
+ *
+ * Implemented operations: insert, contains, height, successor, predecessor, range, countRange, printByLevel
+ */
+
+public class BPlusTree {
+
+    private int T; // the mindegree of the B+Tree
+
+    class BTreeNode {
+        int n;    // current number of keys contained in node
+        int key[] = new int[2 * T - 1];   //maximum 2T-1 keys
+        BTreeNode child[];                // maximum 2T children, null for leaves
+        BTreeNode prev, next;             // leaf chain, null for internal nodes
+        boolean leaf;
+
+        BTreeNode(boolean leaf) {
+            this.leaf = leaf;
+            if (!leaf) child = new BTreeNode[2 * T];
+        }
+
+        public String toString(){
+            StringBuilder sb =new StringBuilder();
+            sb.append(" [ ");
+            for (int i=0; i<n; i++)
+                sb.append(" "+key[i]);
+            sb.append(" ] ");
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Forward cursor over the keys of a range, following the leaf chain
+     */
+    public class Cursor implements PrimitiveIterator.OfInt {
+        private BTreeNode leaf;
+        private int i;
+        private final int hi;
+
+        Cursor(BTreeNode leaf, int i, int hi) {
+            this.leaf = leaf;
+            this.i = i;
+            this.hi = hi;
+        }
+
+        public boolean hasNext() {
+            while (leaf != null && i >= leaf.n) { // move on to the next non-empty leaf
+                leaf = leaf.next;
+                i = 0;
+            }
+            return leaf != null && leaf.key[i] <= hi;
+        }
+
+        public int nextInt() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return leaf.key[i++];
+        }
+
+        public void forEachRemaining(IntConsumer action) {
+            while (hasNext()) action.accept(leaf.key[i++]);
+        }
+    }
+
+    /**
+     * Constructor of an empty B+Tree of mindegree T
+     * @param t - degree of B+ tree
+     */
+    public BPlusTree(int t) {
+        if (t < 2) throw new IllegalArgumentException("mindegree must be at least 2: " + t);
+        T = t;
+        root = new BTreeNode(true);
+    }
+
+    private BTreeNode root; // root of tree
+
+    /**
+     * Number of keys in x that are strictly smaller than k
+     */
+    private static int lowerBound(BTreeNode x, int k) {
+        int lo = 0, hi = x.n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (x.key[mid] < k) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Number of keys in x that are smaller than or equal to k
+     */
+    private static int upperBound(BTreeNode x, int k) {
+        int lo = 0, hi = x.n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (x.key[mid] <= k) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Insert a key in a single pass down the tree, splitting full nodes on the way
+     * @param key - new key to be inserted
+     */
+    public void insert(int key) {
+        if (root.n == 2 * T - 1) { // if the root node is already full
+            BTreeNode s = new BTreeNode(false); // preventively splits the root
+            s.child[0] = root;
+            split(s, 0, root);
+            root = s;
+        }
+        BTreeNode x = root;
+        while (!x.leaf) {
+            int i = upperBound(x, key); // search child to continue insertion
+            BTreeNode tmp = x.child[i];
+            if (tmp.n == 2 * T - 1) {
+                split(x, i, tmp);
+                if (key >= x.key[i]) { // determines in which split half we insert
+                    i++;
+                }
+            }
+            x = x.child[i];
+        }
+        int i = upperBound(x, key);
+        System.arraycopy(x.key, i, x.key, i + 1, x.n - i);
+        x.key[i] = key;
+        x.n = x.n + 1;
+    }
+
+    /**
+     * Splits a full node and introduces the new right half as a child of the same parent
+     * A leaf keeps all its keys and copies the first key of the right half up into the
+     * parent; an internal node moves its middle key up, as in [CLRS]
+     * @param x - parent of node to split
+     * @param pos - position in parent where to link new node
+     * @param y - node to be split
+     */
+    private void split(BTreeNode x, int pos, BTreeNode y) {
+        BTreeNode z = new BTreeNode(y.leaf);
+        int separator;
+        if (y.leaf) {
+            z.n = T;
+            System.arraycopy(y.key, T - 1, z.key, 0, T);
+            y.n = T - 1;
+            separator = z.key[0];
+            // link z into the leaf chain, right after y
+            z.next = y.next;
+            if (y.next != null) y.next.prev = z;
+            z.prev = y;
+            y.next = z;
+        } else {
+            z.n = T - 1;
+            System.arraycopy(y.key, T, z.key, 0, T - 1);
+            System.arraycopy(y.child, T, z.child, 0, T);
+            Arrays.fill(y.child, T, 2 * T, null);
+            y.n = T - 1;
+            separator = y.key[T - 1];
+        }
+        //right shift children and keys in parent node
+        System.arraycopy(x.child, pos + 1, x.child, pos + 2, x.n - pos);
+        x.child[pos + 1] = z;
+        System.arraycopy(x.key, pos, x.key, pos + 1, x.n - pos);
+        x.key[pos] = separator;
+        x.n = x.n + 1;
+    }
+
+    // Leaf where the keys >= key start: the scan for key begins here
+    private BTreeNode leafFor(int key) {
+        BTreeNode x = root;
+        while (!x.leaf) x = x.child[lowerBound(x, key)];
+        return x;
+    }
+
+    public boolean contains(int key) {
+        BTreeNode x = root;
+        while (!x.leaf) x = x.child[upperBound(x, key)];
+        int i = lowerBound(x, key);
+        return i < x.n && x.key[i] == key;
+    }
+
+    public int height() {
+        int h = 1;
+        for (BTreeNode x = root; !x.leaf; x = x.child[0]) h++;
+        return h;
+    }
+
+    /**
+     * Smallest key strictly greater than key, or 0 if there is none (as in BTree)
+     */
+    public int successor(int key) {
+        BTreeNode x = root;
+        while (!x.leaf) x = x.child[upperBound(x, key)];
+        int i = upperBound(x, key);
+        while (x != null && i >= x.n) {
+            x = x.next;
+            i = 0;
+        }
+        return x == null ? 0 : x.key[i];
+    }
+
+    /**
+     * Largest key strictly smaller than key, or 0 if there is none (as in BTree)
+     */
+    public int predecessor(int key) {
+        BTreeNode x = leafFor(key);
+        int i = lowerBound(x, key);
+        while (x != null && i == 0) {
+            x = x.prev;
+            if (x != null) i = x.n;
+        }
+        return x == null ? 0 : x.key[i - 1];
+    }
+
+    /**
+     * Cursor over all keys k with lo <= k <= hi, in ascending order
+     */
+    public Cursor range(int lo, int hi) {
+        BTreeNode x = leafFor(lo);
+        return new Cursor(x, lowerBound(x, lo), hi);
+    }
+
+    /**
+     * Number of keys k with lo <= k <= hi
+     * Only the first and last leaf of the range are searched, the leaves in between
+     * contribute their key count.
+     */
+    public long countRange(int lo, int hi) {
+        if (lo > hi) return 0;
+        BTreeNode x = leafFor(lo);
+        long count = 0;
+        int from = lowerBound(x, lo);
+        while (x != null) {
+            if (x.n > 0 && x.key[x.n - 1] > hi) return count + upperBound(x, hi) - from;
+            count += x.n - from;
+            x = x.next;
+            from = 0;
+        }
+        return count;
+    }
+
+    public void printByLevel(){
+        Queue<BTreeNode> q=new LinkedList<>();
+        q.add(root);
+        while(!q.isEmpty()){
+            BTreeNode cur=q.poll();
+            System.out.print(cur);
+            if(!cur.leaf){
+                for(int i=0;i<=cur.n;i++) q.add(cur.child[i]);
+            }
+            System.out.println();
+        }
+    }
+}
@@ -1,12 +1,23 @@
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.PrimitiveIterator;
 import java.util.Queue;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 
 /**
  * A simple implementation for B-Tree with Integer keys
  *
- * Implemented operations: insert, displayLevels
+ * Implemented operations: insert, remove, markDeleted, compact, contains, height,
+ *   successor, predecessor, forEach, printByLevel
  *
  * Implement as exercises:
  *   public boolean contains(int key);
@@ -26,8 +37,10 @@ public class BTree {
     class BTreeNode {
         int n;    // current number of keys contained in node
         Integer key[] = new Integer[2 * T - 1];   //maximum 2T-1 keys
+        boolean dead[] = new boolean[2 * T - 1];  // key i is marked deleted, see markDeleted
         BTreeNode child[] = new BTreeNode[2 * T]; // maximum 2T children
         boolean leaf = true;
+        boolean marked; // some key of this subtree may be marked deleted, cleared by compact
 
         public String toString(){
             StringBuilder sb =new StringBuilder();
@@ -52,20 +65,160 @@ public class BTree {
 
     private BTreeNode root; // root of tree
 
+    private TreeListener listener; // optional instrumentation, null when disabled
+
+    // keys marked with markDeleted and still physically in the tree until compact()
+    private int marks;
+
+    /**
+     * Sets the listener notified of splits, comparisons, lookups and height changes
+     * @param listener - the listener, or null to disable instrumentation
+     */
+    public void setListener(TreeListener listener) {
+        this.listener = listener;
+    }
+
+    public static final double DEFAULT_FILL_FACTOR = 0.9;
+
+    /**
+     * Builds a B-Tree from sorted keys bottom-up, in a single linear pass with no splits
+     * Leaves are filled to fillFactor of their capacity (2T-1 keys), the key after each
+     * leaf becomes a separator in the level above, and the internal levels are built
+     * the same way from those separators. Node sizes are spread evenly so that every
+     * node ends up with between T-1 and 2T-1 keys, whatever the fill factor.
+     * @param t - degree of B tree
+     * @param sorted - keys in non-decreasing order
+     * @param fillFactor - target fraction of each node's capacity, in (0, 1]
+     * @param parallel - build the leaves concurrently on the common fork-join pool
+     */
+    public static BTree bulkLoad(int t, int[] sorted, double fillFactor, boolean parallel) {
+        if (t < 2) throw new IllegalArgumentException("mindegree must be at least 2: " + t);
+        if (!(fillFactor > 0 && fillFactor <= 1)) throw new IllegalArgumentException("fill factor must be in (0, 1]: " + fillFactor);
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i - 1] > sorted[i]) throw new IllegalArgumentException("keys are not sorted at index " + i);
+        }
+        BTree tree = new BTree(t);
+        tree.root = tree.buildBottomUp(sorted, fillFactor, parallel);
+        return tree;
+    }
+
+    public static BTree bulkLoad(int t, int[] sorted) {
+        return bulkLoad(t, sorted, DEFAULT_FILL_FACTOR, false);
+    }
+
+    public static BTree bulkLoad(int t, IntStream sorted, double fillFactor, boolean parallel) {
+        return bulkLoad(t, sorted.toArray(), fillFactor, parallel);
+    }
+
+    public static BTree bulkLoad(int t, PrimitiveIterator.OfInt sorted, double fillFactor, boolean parallel) {
+        int[] keys = new int[16];
+        int n = 0;
+        while (sorted.hasNext()) {
+            if (n == keys.length) keys = Arrays.copyOf(keys, 2 * n);
+            keys[n++] = sorted.nextInt();
+        }
+        return bulkLoad(t, Arrays.copyOf(keys, n), fillFactor, parallel);
+    }
+
+    /**
+     * Start of group g when total items are spread evenly over groups of size total/groups
+     */
+    private static int groupStart(int g, int total, int groups) {
+        return g * (total / groups) + Math.min(g, total % groups);
+    }
+
+    /**
+     * Number of groups to cut total items into, aiming at target items per group while
+     * keeping every group between min and max items
+     */
+    private static int groupCount(int total, int target, int min, int max) {
+        int groups = (total + target - 1) / target;
+        groups = Math.max(groups, (total + max - 1) / max);
+        return Math.min(groups, total / min);
+    }
+
+    private BTreeNode buildBottomUp(int[] a, double fillFactor, boolean parallel) {
+        int target = Math.max(T - 1, Math.min(2 * T - 1, (int) Math.round(fillFactor * (2 * T - 1))));
+        if (a.length <= 2 * T - 1) {
+            BTreeNode leaf = new BTreeNode();
+            for (int i = 0; i < a.length; i++) leaf.key[i] = a[i];
+            leaf.n = a.length;
+            return leaf;
+        }
+        // leaf level: leaf i owns a run of keys followed by one separator,
+        // the last leaf has no separator, hence a.length + 1 slots
+        int slots = a.length + 1;
+        int count = groupCount(slots, target + 1, T, 2 * T);
+        BTreeNode[] leafNodes = new BTreeNode[count];
+        int[] leafSeps = new int[count - 1];
+        IntStream leaves = IntStream.range(0, count);
+        (parallel ? leaves.parallel() : leaves).forEach(i -> {
+            int from = groupStart(i, slots, count);
+            int keys = groupStart(i + 1, slots, count) - from - 1;
+            BTreeNode leaf = new BTreeNode();
+            for (int j = 0; j < keys; j++) leaf.key[j] = a[from + j];
+            leaf.n = keys;
+            leafNodes[i] = leaf;
+            if (i < count - 1) leafSeps[i] = a[from + keys];
+        });
+        BTreeNode[] nodes = leafNodes;
+        int[] seps = leafSeps;
+
+        // internal levels: each parent takes a run of children and the separators between them,
+        // the separator between two parents moves one level up
+        while (nodes.length > 2 * T) {
+            int children = nodes.length;
+            int parents = groupCount(children, target + 1, T, 2 * T);
+            BTreeNode[] up = new BTreeNode[parents];
+            int[] upSeps = new int[parents - 1];
+            for (int p = 0; p < parents; p++) {
+                int from = groupStart(p, children, parents);
+                int to = groupStart(p + 1, children, parents);
+                up[p] = internalNode(nodes, seps, from, to);
+                if (p < parents - 1) upSeps[p] = seps[to - 1];
+            }
+            nodes = up;
+            seps = upSeps;
+        }
+        return internalNode(nodes, seps, 0, nodes.length);
+    }
+
+    // Internal node over children[from, to) with the separators between them as keys
+    private BTreeNode internalNode(BTreeNode[] children, int[] seps, int from, int to) {
+        BTreeNode x = new BTreeNode();
+        x.leaf = false;
+        x.n = to - from - 1;
+        for (int j = 0; j < x.n; j++) {
+            x.key[j] = seps[from + j];
+            x.child[j] = children[from + j];
+        }
+        x.child[x.n] = children[to - 1];
+        return x;
+    }
+
     /**
      * Insert a key into a B-Tree in a single pass down the tree
      * see [CLRS] algorithm
      * @param key - new key to be inserted
      */
     public void insert(Integer key) {
+        if (marks > 0 && mark(root, key, true, false)) { // a marked copy is still in the tree, just revive it
+            marks--;
+            return;
+        }
         BTreeNode r = root;
         if (r.n == 2 * T - 1) { // if the root node is already full
             BTreeNode s = new BTreeNode(); // preventively splits the root
             root = s;
             s.leaf = false;
             s.n = 0;
+            s.marked = r.marked;
             s.child[0] = r;
             split(s, 0, r);
+            if (listener != null) {
+                int h = height();
+                listener.onHeightChange(h - 1, h);
+            }
             insertNonfullStart(s, key);
         } else {
             insertNonfullStart(r, key);
@@ -81,13 +234,15 @@ public class BTree {
      * @param y - node to be split
      */
     private void split(BTreeNode x, int pos, BTreeNode y) {
-        System.out.println("Split node "+y.toString());
+        if (listener != null) listener.onSplit(y);
 
         BTreeNode z = new BTreeNode();
         z.leaf = y.leaf; // new node z is leaf only if node y to be splitted was leaf
         z.n = T - 1;
+        z.marked = y.marked;
         for (int j = 0; j < T - 1; j++) { //copy right half of y into new node
             z.key[j] = y.key[j + T];
+            z.dead[j] = y.dead[j + T];
         }
         if (!y.leaf) {
             for (int j = 0; j < T; j++) {
@@ -103,8 +258,10 @@ public class BTree {
 
         for (int j = x.n - 1; j >= pos; j--) {
             x.key[j + 1] = x.key[j];
+            x.dead[j + 1] = x.dead[j];
         }
         x.key[pos] = y.key[T - 1];
+        x.dead[pos] = y.dead[T - 1];
         x.n = x.n + 1;
     }
 
@@ -125,14 +282,18 @@ public class BTree {
             // shift existing keys right to make place for new k
             for (i = x.n - 1; i >= 0 && k < x.key[i]; i--) {
                 x.key[i + 1] = x.key[i];
+                x.dead[i + 1] = x.dead[i];
             }
+            if (listener != null) listener.onCompare(x.n - 1 - i + (i >= 0 ? 1 : 0));
             x.key[i + 1] = k;
+            x.dead[i + 1] = false;
             x.n = x.n + 1;
         } else { // x is not a leaf
             int i = 0;
             for (i = x.n - 1; i >= 0 && k < x.key[i]; i--) {
             } // search child to continue insertion
             ;
+            if (listener != null) listener.onCompare(x.n - 1 - i + (i >= 0 ? 1 : 0));
             i++;
             BTreeNode tmp = x.child[i];
             if (tmp.n == 2 * T - 1) {
@@ -146,17 +307,121 @@ public class BTree {
         }
     }
     public boolean contains(int key){
+        if(marks>0) return mark(root,key,false,false); // a copy that is not marked
         return contains(root,key);
     }
+
+    /**
+     * Finds a copy of key below x whose mark is from and sets its mark to to, with from == to
+     * it only checks that such a copy exists. Newly marked keys set marked on the way up.
+     */
+    private boolean mark(BTreeNode x,int key,boolean from,boolean to){
+        int i=0;
+        while(i<x.n && x.key[i]<key) i++;
+        for(int j=i;j<x.n && x.key[j]==key;j++){
+            if(x.dead[j]==from){
+                x.dead[j]=to;
+                if(to) x.marked=true;
+                return true;
+            }
+        }
+        if(x.leaf) return false;
+        for(int j=i;j<=x.n;j++){ // copies of key may sit in every child around the copies in x
+            if(mark(x.child[j],key,from,to)){
+                if(to) x.marked=true;
+                return true;
+            }
+            if(j==x.n || x.key[j]!=key) break;
+        }
+        return false;
+    }
     private boolean contains(BTreeNode root,int key){
-       if(root==null) return false;
+       return contains(root,key,0);
+    }
+    private boolean contains(BTreeNode root,int key,int visited){
+       if(root==null) return lookupDone(visited,false);
+       visited++;
        int i=0;
        while(i<root.n){
-           if(root.key[i]==key) return true;
-           if(root.key[i]>key) return contains(root.child[i],key);
+           if(listener!=null) listener.onCompare(1);
+           if(root.key[i]==key) return lookupDone(visited,true);
+           if(root.key[i]>key) return contains(root.child[i],key,visited);
            i++;
        }
-       return false;
+       if(root.leaf) return lookupDone(visited,false);
+       return contains(root.child[root.n],key,visited); // key is greater than every key of this node
+    }
+    private boolean lookupDone(int visited,boolean found){
+       if(listener!=null) listener.onLookup(visited);
+       return found;
+    }
+
+    private static final int PARALLEL_GRAIN = 1 << 13; // parts of a batch smaller than this stay sequential
+
+    /**
+     * Which keys of a batch are in the tree: result[i] is whether keys[i] is there
+     * The batch is sorted and searched in a single descent: each node merges its keys
+     * with the part of the batch that reached it and hands every child the run of batch
+     * keys falling between two of its keys, so the upper levels are read once for the
+     * whole batch instead of once per key. Runs of PARALLEL_GRAIN keys or more go to
+     * the children concurrently on the common fork-join pool.
+     */
+    public boolean[] containsAll(int[] keys) {
+        long[] sorted = Batches.sortedWithPositions(keys);
+        boolean[] found = new boolean[keys.length];
+        boolean[] onMarked = marks > 0 ? new boolean[keys.length] : null; // met only marked copies in the walk
+        new ContainsAllTask(root, sorted, found, onMarked, 0, sorted.length).invoke();
+        if (onMarked != null) {
+            for (int i = 0; i < keys.length; i++) if (onMarked[i]) found[i] = mark(root, keys[i], false, false);
+        }
+        return found;
+    }
+
+    // Searches the batch keys sorted[from, to) below x, setting found at their positions
+    private final class ContainsAllTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BTreeNode x;
+        private final long[] sorted;
+        private final boolean[] found, onMarked;
+        private final int from, to;
+
+        ContainsAllTask(BTreeNode x, long[] sorted, boolean[] found, boolean[] onMarked, int from, int to) {
+            this.x = x;
+            this.sorted = sorted;
+            this.found = found;
+            this.onMarked = onMarked;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            List<ContainsAllTask> forked = new ArrayList<>();
+            search(x, from, to, forked);
+            for (ContainsAllTask t : forked) t.join();
+        }
+
+        private void search(BTreeNode x, int from, int to, List<ContainsAllTask> forked) {
+            int j = from;
+            for (int i = 0; i <= x.n && j < to; i++) {
+                int start = j;
+                while (j < to && (i == x.n || (int) (sorted[j] >> 32) < x.key[i])) j++; // keys of child i
+                if (!x.leaf && j > start) {
+                    if (j - start >= PARALLEL_GRAIN) {
+                        ContainsAllTask t = new ContainsAllTask(x.child[i], sorted, found, onMarked, start, j);
+                        t.fork();
+                        forked.add(t);
+                    } else {
+                        search(x.child[i], start, j, forked);
+                    }
+                }
+                while (i < x.n && j < to && (int) (sorted[j] >> 32) == x.key[i]) {
+                    int position = (int) sorted[j++];
+                    if (x.dead[i]) onMarked[position] = true; // another copy may still be live, checked at the end
+                    else found[position] = true;
+                }
+            }
+        }
     }
 
     public int height(){
@@ -166,6 +431,30 @@ public class BTree {
         if(root.leaf) return 1;
         return 1+height(root.child[0]);
     }
+    /**
+     * Height, order, key counts, leaf depth, size and depth histogram in one pass, see TreeDiagnostics
+     * Balanced means every leaf is at the same depth. Keys marked deleted are still counted.
+     * @param parallel - walk the subtrees below the top levels as fork-join tasks
+     */
+    public TreeDiagnostics.Report diagnose(boolean parallel){
+        return TreeDiagnostics.run(new TreeDiagnostics.Adapter<BTreeNode>() {
+            public BTreeNode root() { return root; }
+            public int keys(BTreeNode node) { return node.n; }
+            public int children(BTreeNode node) { return node.leaf ? 0 : node.n + 1; }
+            public BTreeNode child(BTreeNode node, int i) { return node.child[i]; }
+            public int compare(BTreeNode a, int i, BTreeNode b, int j) { return a.key[i].compareTo(b.key[j]); }
+            public int maxHeightSkew() { return 0; }
+            public boolean duplicatesAllowed() { return true; } // insert does not reject equal keys
+            public boolean checkNode(BTreeNode node, boolean isRoot) {
+                if (node.n > 2 * T - 1 || node.n < (isRoot ? 0 : T - 1)) return false;
+                if (!node.leaf) {
+                    for (int i = 0; i <= node.n; i++) if (node.child[i] == null) return false;
+                }
+                return true;
+            }
+        }, parallel);
+    }
+
     public void printByLevel(){
         printByLevel(root);
     }
@@ -187,54 +476,393 @@ public class BTree {
         }
 
     }
+    /**
+     * Smallest key strictly greater than key, or 0 if there is none
+     */
     public int successor(int key){
-        return successor(root,key,0);
+        Integer s=successor(root,key,null);
+        while(s!=null && marks>0 && !mark(root,s,false,false)) s=successor(root,s,null);
+        return s==null ? 0 : s;
     }
-    private int successor(BTreeNode root,int key,int ancestor){
-        if(root==null) return ancestor;
-
+    private Integer successor(BTreeNode root,int key,Integer ancestor){
         int i=0;
         while (i<root.n && root.key[i]<=key){
-            ancestor=root.key[i];
             i++;
         }
-        if(root.key[i]==key){
-            if(root.child[i+1]!=null){
-                root=root.child[i+1];
-                while (root.child[0]!=null){
-                    root=root.child[0];
-                }
-                return root.key[0];
-            }
-        }
-        else if(i<root.n) return root.key[i];
-        else return ancestor;
+        if(i<root.n) ancestor=root.key[i]; // keys further down child[i] are smaller, but still > key
+        if(root.leaf) return ancestor;
         return successor(root.child[i],key,ancestor);
     }
+    /**
+     * Largest key strictly smaller than key, or 0 if there is none
+     */
     public int predecessor(int key){
-        return predecessor(root,key,0);
+        Integer p=predecessor(root,key,null);
+        while(p!=null && marks>0 && !mark(root,p,false,false)) p=predecessor(root,p,null);
+        return p==null ? 0 : p;
     }
-    private int predecessor(BTreeNode root,int key,int ancestor){
-        if(root==null) return ancestor;
+    private Integer predecessor(BTreeNode root,int key,Integer ancestor){
         int i=0;
         while(i<root.n && root.key[i]<key){
-            ancestor=root.key[i];
             i++;
         }
+        if(i>0) ancestor=root.key[i-1];
+        if(root.leaf) return ancestor;
+        return predecessor(root.child[i],key,ancestor);
+    }
+
+    /**
+     * Read-only copy of the keys laid out for fast lookups, see FrozenIntSet
+     * Keys marked deleted are left out.
+     */
+    public FrozenIntSet freeze(){
+        IntStream.Builder keys=IntStream.builder();
+        forEach(keys::add);
+        int[] sorted=keys.build().toArray();
+        return FrozenIntSet.fromSorted(sorted,sorted.length);
+    }
+
+    /**
+     * Writes the keys to file in the TreeSnapshot format, streaming them from the tree
+     * Keys marked deleted are left out.
+     */
+    public void save(Path file) throws IOException{
+        TreeSnapshot.write(file,TreeSnapshot.INT,TreeSnapshot.NONE,action->forEach(k->action.accept(k,null)));
+    }
+
+    /**
+     * Tree read from a snapshot written by save, bulk loaded in linear time
+     * The keys are copied from the mapped file in one block, without decoding them one by one.
+     * @param t - degree of the B tree
+     */
+    public static BTree load(Path file,int t) throws IOException{
+        long[] count=new long[1];
+        ByteBuffer body=TreeSnapshot.open(file,TreeSnapshot.INT,TreeSnapshot.NONE,count);
+        if(body.remaining()!=4L*count[0]) throw new IOException(file+": bad snapshot length");
+        int[] keys=new int[(int)count[0]];
+        body.asIntBuffer().get(keys);
+        return bulkLoad(t,keys);
+    }
+
+    /**
+     * Calls action on every key, in ascending order
+     */
+    public void forEach(IntConsumer action){
+        forEach(root,action);
+    }
+    private void forEach(BTreeNode x,IntConsumer action){
+        for(int i=0;i<x.n;i++){
+            if(!x.leaf) forEach(x.child[i],action);
+            if(!x.dead[i]) action.accept(x.key[i]);
+        }
+        if(!x.leaf) forEach(x.child[x.n],action);
+    }
 
-        if(root.key[i]==key){
-            if(root.child[i]!=null){
-                root=root.child[i];
-                while (root.child[root.n]!=null){
-                    root=root.child[root.n];
+    /**
+     * Removes one occurrence of key in a single pass down the tree
+     * Before descending into a child that has only T-1 keys, the child borrows a key
+     * from a sibling or is merged with one, so the removal never has to walk back up.
+     * see [CLRS] algorithm
+     * @param key - key to be removed
+     */
+    public void remove(int key){
+        int removed=remove(root,key);
+        if(root.n==0 && !root.leaf){ // the root lost its last key in a merge, tree shrinks
+            root=root.child[0];
+            if(listener!=null){
+                int h=height();
+                listener.onHeightChange(h+1,h);
+            }
+        }
+        if(removed==REMOVED_MARKED){ // the copy that went was marked, so a visible one takes its mark
+            marks--;
+            markDeleted(key);
+        }
+    }
+
+    // results of remove(x,k)
+    private static final int NOT_FOUND=0, REMOVED=1, REMOVED_MARKED=2;
+
+    private int remove(BTreeNode x,int k){
+        int i=0;
+        while(i<x.n && x.key[i]<k) i++;
+        if(i<x.n && x.key[i]==k){
+            int removed=x.dead[i] ? REMOVED_MARKED : REMOVED;
+            if(x.leaf){ // key in a leaf: just drop it
+                for(int j=i;j<x.n-1;j++){
+                    x.key[j]=x.key[j+1];
+                    x.dead[j]=x.dead[j+1];
                 }
-                return root.key[root.n-1];
+                x.n--;
+                x.key[x.n]=null;
+                x.dead[x.n]=false;
+                return removed;
             }
+            BTreeNode y=x.child[i], z=x.child[i+1];
+            if(y.n>=T){ // replace key by its predecessor, removed from the left child
+                int pred=maxKey(y);
+                x.key[i]=pred;
+                x.dead[i]=remove(y,pred)==REMOVED_MARKED; // the mark moves up with the key
+            } else if(z.n>=T){ // or by its successor, removed from the right child
+                int succ=minKey(z);
+                x.key[i]=succ;
+                x.dead[i]=remove(z,succ)==REMOVED_MARKED;
+            } else { // both children minimal: merge them around key and remove it there
+                merge(x,i);
+                return remove(y,k);
+            }
+            return removed;
         }
-        else if(i>0) return root.key[i-1];
-        else return ancestor;
-        return predecessor(root.child[i],key,ancestor);
+        if(x.leaf) return NOT_FOUND; // key not in tree
+        if(x.child[i].n==T-1){ // make sure the child we descend into can lose a key
+            if(i>0 && x.child[i-1].n>=T) borrowFromLeft(x,i);
+            else if(i<x.n && x.child[i+1].n>=T) borrowFromRight(x,i);
+            else if(i<x.n) merge(x,i);
+            else {
+                merge(x,i-1);
+                i--;
+            }
+        }
+        return remove(x.child[i],k);
+    }
+    private int maxKey(BTreeNode x){
+        while(!x.leaf) x=x.child[x.n];
+        return x.key[x.n-1];
+    }
+    private int minKey(BTreeNode x){
+        while(!x.leaf) x=x.child[0];
+        return x.key[0];
+    }
+
+    /**
+     * Merges child i+1 of x and the key between them into child i
+     */
+    private void merge(BTreeNode x,int i){
+        BTreeNode y=x.child[i], z=x.child[i+1];
+        y.key[y.n]=x.key[i];
+        y.dead[y.n]=x.dead[i];
+        y.marked|=z.marked || x.dead[i];
+        for(int j=0;j<z.n;j++){
+            y.key[y.n+1+j]=z.key[j];
+            y.dead[y.n+1+j]=z.dead[j];
+        }
+        if(!y.leaf){
+            for(int j=0;j<=z.n;j++) y.child[y.n+1+j]=z.child[j];
+        }
+        y.n+=z.n+1;
+        for(int j=i;j<x.n-1;j++){ //left shift keys and children in parent node
+            x.key[j]=x.key[j+1];
+            x.dead[j]=x.dead[j+1];
+            x.child[j+1]=x.child[j+2];
+        }
+        x.n--;
+        x.key[x.n]=null;
+        x.dead[x.n]=false;
+        x.child[x.n+1]=null;
     }
 
+    /**
+     * Child i of x gets the key before it from x, x gets the last key of child i-1
+     */
+    private void borrowFromLeft(BTreeNode x,int i){
+        BTreeNode c=x.child[i], l=x.child[i-1];
+        for(int j=c.n;j>0;j--){
+            c.key[j]=c.key[j-1];
+            c.dead[j]=c.dead[j-1];
+        }
+        if(!c.leaf){
+            for(int j=c.n+1;j>0;j--) c.child[j]=c.child[j-1];
+            c.child[0]=l.child[l.n];
+            l.child[l.n]=null;
+            c.marked|=c.child[0].marked;
+        }
+        c.key[0]=x.key[i-1];
+        c.dead[0]=x.dead[i-1];
+        c.marked|=c.dead[0];
+        c.n++;
+        x.key[i-1]=l.key[l.n-1];
+        x.dead[i-1]=l.dead[l.n-1];
+        l.n--;
+        l.key[l.n]=null;
+        l.dead[l.n]=false;
+    }
+
+    /**
+     * Child i of x gets the key after it from x, x gets the first key of child i+1
+     */
+    private void borrowFromRight(BTreeNode x,int i){
+        BTreeNode c=x.child[i], r=x.child[i+1];
+        c.key[c.n]=x.key[i];
+        c.dead[c.n]=x.dead[i];
+        c.marked|=x.dead[i];
+        if(!c.leaf){
+            c.child[c.n+1]=r.child[0];
+            c.marked|=r.child[0].marked;
+        }
+        c.n++;
+        x.key[i]=r.key[0];
+        x.dead[i]=r.dead[0];
+        for(int j=0;j<r.n-1;j++){
+            r.key[j]=r.key[j+1];
+            r.dead[j]=r.dead[j+1];
+        }
+        if(!r.leaf){
+            for(int j=0;j<r.n;j++) r.child[j]=r.child[j+1];
+            r.child[r.n]=null;
+        }
+        r.n--;
+        r.key[r.n]=null;
+        r.dead[r.n]=false;
+    }
 
-}
\ No newline at end of file
+    /**
+     * Marks one occurrence of key as deleted without touching the tree structure
+     * The mark is a flag next to the key in its node, and the nodes on the way to it
+     * are flagged so that compact() only visits the subtrees holding marks. The key
+     * disappears from contains, successor, predecessor and forEach right away, and is
+     * physically removed, together with every other marked key, by the next compact().
+     * Inserting a marked key again simply clears the mark.
+     */
+    public void markDeleted(int key){
+        if(mark(root,key,false,true)) marks++;
+    }
+
+    /**
+     * Number of keys marked by markDeleted and not compacted yet
+     */
+    public int pendingDeletes(){
+        return marks;
+    }
+
+    /**
+     * Physically removes every marked key in one pass over the flagged subtrees
+     * Each node first loses its own marked keys: in a leaf they are filtered out, a
+     * marked key of an inner node is replaced by the largest key of its left subtree
+     * (or the smallest of its right one). Then each child left with fewer than T-1 keys
+     * borrows from a sibling or is merged with one. Subtrees without marks stay as they
+     * are, and every node is fixed once however many of its keys went.
+     */
+    public void compact(){
+        if(marks==0) return;
+        int oldHeight=listener!=null ? height() : 0;
+        compact(root);
+        while(root.n==0 && !root.leaf) root=root.child[0]; // the top levels lost all their keys
+        marks=0;
+        if(listener!=null && height()!=oldHeight) listener.onHeightChange(oldHeight,height());
+    }
+
+    /**
+     * Removes the marked keys below x. Afterwards every node below x has at least T-1 keys
+     * and x has at least one or a single child, which its parent fixes.
+     */
+    private void compact(BTreeNode x){
+        x.marked=false;
+        if(x.leaf){
+            int n=0;
+            for(int i=0;i<x.n;i++){
+                if(x.dead[i]) continue;
+                x.key[n]=x.key[i];
+                x.dead[n++]=false;
+            }
+            for(int i=n;i<x.n;i++){
+                x.key[i]=null;
+                x.dead[i]=false;
+            }
+            x.n=n;
+            return;
+        }
+        for(int i=0;i<=x.n;i++){
+            if(x.child[i].marked) compact(x.child[i]);
+        }
+        for(int i=x.n-1;i>=0;i--){
+            if(x.dead[i]) dropKey(x,i);
+        }
+        fixChildren(x);
+    }
+
+    /**
+     * Replaces marked key i of x, whose children are compacted, by a key taken from
+     * the subtree on its left or on its right, or drops it when both are empty
+     */
+    private void dropKey(BTreeNode x,int i){
+        Integer k=takeMax(x.child[i]);
+        if(k==null) k=takeMin(x.child[i+1]);
+        x.dead[i]=false;
+        if(k!=null){
+            x.key[i]=k;
+            return;
+        }
+        for(int j=i;j<x.n-1;j++){ // both sides empty: drop the key and the right child
+            x.key[j]=x.key[j+1];
+            x.dead[j]=x.dead[j+1];
+            x.child[j+1]=x.child[j+2];
+        }
+        x.n--;
+        x.key[x.n]=null;
+        x.dead[x.n]=false;
+        x.child[x.n+1]=null;
+    }
+
+    // Removes and returns the largest key below x, null if there is none
+    private Integer takeMax(BTreeNode x){
+        if(x.leaf){
+            if(x.n==0) return null;
+            x.n--;
+            Integer k=x.key[x.n];
+            x.key[x.n]=null;
+            return k;
+        }
+        Integer k=takeMax(x.child[x.n]);
+        if(x.n>0 && x.child[x.n].n<T-1) fill(x,x.n);
+        return k;
+    }
+
+    // Removes and returns the smallest key below x, null if there is none
+    private Integer takeMin(BTreeNode x){
+        if(x.leaf){
+            if(x.n==0) return null;
+            Integer k=x.key[0];
+            for(int j=0;j<x.n-1;j++) x.key[j]=x.key[j+1];
+            x.n--;
+            x.key[x.n]=null;
+            return k;
+        }
+        Integer k=takeMin(x.child[0]);
+        if(x.n>0 && x.child[0].n<T-1) fill(x,0);
+        return k;
+    }
+
+    // Brings every child of x back to T-1 keys, as long as x has more than one child
+    private void fixChildren(BTreeNode x){
+        if(x.leaf) return;
+        for(int i=0;i<=x.n && x.n>0;i++){
+            if(x.child[i].n<T-1) i=fill(x,i);
+        }
+    }
+
+    /**
+     * Child i of x borrows keys from its siblings or is merged with one until it has
+     * T-1 keys, or until it is the only child of x. Returns the index of the child now
+     * holding its keys.
+     */
+    private int fill(BTreeNode x,int i){
+        while(x.child[i].n<T-1 && x.n>0){
+            if(i>0 && x.child[i-1].n>=T) borrowFromLeft(x,i);
+            else if(i<x.n && x.child[i+1].n>=T) borrowFromRight(x,i);
+            else {
+                if(i==x.n) i--; // the last child merges into its left sibling
+                merge(x,i);
+            }
+            fixChildren(x.child[i]); // a child that had a single child can fix it now, possibly losing keys
+        }
+        return i;
+    }
+
+    /**
+     * Batched removal: marks all keys and compacts once
+     */
+    public void removeAll(int... keys){
+        for(int k: keys) markDeleted(k);
+        compact();
+    }
+}
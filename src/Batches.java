@@ -0,0 +1,61 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ordering of the keys of batch operations (G_AVL.getAll, G_BST.containsAll, BTree.containsAll
+ * and the putAll methods), which walk the tree once for a whole sorted batch
+ */
+final class Batches {
+
+    private Batches() {
+    }
+
+    /**
+     * Positions of keys in increasing key order; equal keys keep their order in the batch
+     * keys holds Comparable keys, copied out of the batch once (List.toArray) so that
+     * sorting does not depend on the cost of List.get.
+     */
+    @SuppressWarnings("unchecked")
+    static int[] sortedOrder(Object[] keys) {
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.parallelSort(order, (a, b) -> ((Comparable<Object>) keys[a]).compareTo(keys[b])); // stable, sequential when small
+        int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i++) result[i] = order[i];
+        return result;
+    }
+
+    /**
+     * Sorts the entries of a batch by key into keys and values, keeping only the last
+     * entry of equal keys, and returns how many are left
+     * @param keys - receives the keys, at least entries.size() long
+     * @param values - receives the values, at least entries.size() long
+     */
+    @SuppressWarnings("unchecked")
+    static int sortEntries(List<? extends Map.Entry<?, ?>> entries, Object[] keys, Object[] values) {
+        Object[] batchKeys = new Object[entries.size()];
+        Object[] batchValues = new Object[batchKeys.length];
+        int j = 0;
+        for (Map.Entry<?, ?> e : entries) {
+            batchKeys[j] = e.getKey();
+            batchValues[j++] = e.getValue();
+        }
+        int[] order = sortedOrder(batchKeys);
+        int n = 0;
+        for (int i : order) {
+            if (n > 0 && ((Comparable<Object>) batchKeys[i]).compareTo(keys[n - 1]) == 0) n--; // a later entry for the same key
+            keys[n] = batchKeys[i];
+            values[n++] = batchValues[i];
+        }
+        return n;
+    }
+
+    // keys in increasing order, each packed with its position as key << 32 | position
+    static long[] sortedWithPositions(int[] keys) {
+        long[] packed = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) packed[i] = (long) keys[i] << 32 | i;
+        Arrays.parallelSort(packed);
+        return packed;
+    }
+}
@@ -0,0 +1,153 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of fixed size pages of a file, with clock (second chance) eviction
+ *
+ * A page must be pinned while it is used and unpinned afterwards; pinned pages are
+ * never evicted. Dirty pages are written back when they are evicted or on flush().
+ */
+public class BufferPool {
+
+    public static class Frame {
+        int pageId = -1;
+        final ByteBuffer buf;
+        int pins;
+        boolean referenced; // second chance bit of the clock
+        boolean dirty;
+
+        Frame(int pageSize) {
+            buf = ByteBuffer.allocateDirect(pageSize);
+        }
+
+        public ByteBuffer buffer() {
+            return buf;
+        }
+
+        public int pageId() {
+            return pageId;
+        }
+    }
+
+    private final FileChannel channel;
+    private final int pageSize;
+    private final Frame[] frames;
+    private final Map<Integer, Frame> table = new HashMap<>(); // pageId -> frame holding it
+    private int hand; // clock hand
+
+    private long hits, misses, evictions;
+
+    /**
+     * @param channel - file holding the pages, page i starts at offset i * pageSize
+     * @param pageSize - size of a page in bytes
+     * @param capacity - maximum number of pages kept in memory
+     */
+    public BufferPool(FileChannel channel, int pageSize, int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.channel = channel;
+        this.pageSize = pageSize;
+        this.frames = new Frame[capacity];
+        for (int i = 0; i < capacity; i++) frames[i] = new Frame(pageSize);
+    }
+
+    /**
+     * Pins an existing page, reading it from the file if it is not cached
+     */
+    public Frame pin(int pageId) throws IOException {
+        Frame f = table.get(pageId);
+        if (f != null) {
+            hits++;
+        } else {
+            misses++;
+            f = victim();
+            f.buf.clear();
+            long pos = (long) pageId * pageSize;
+            while (f.buf.hasRemaining()) {
+                if (channel.read(f.buf, pos + f.buf.position()) < 0) {
+                    while (f.buf.hasRemaining()) f.buf.put((byte) 0); // past end of file: empty page
+                }
+            }
+            attach(f, pageId);
+        }
+        f.pins++;
+        f.referenced = true;
+        return f;
+    }
+
+    /**
+     * Pins a page that does not exist in the file yet; its content starts zeroed
+     */
+    public Frame pinNew(int pageId) throws IOException {
+        Frame f = victim();
+        f.buf.clear();
+        while (f.buf.hasRemaining()) f.buf.put((byte) 0);
+        attach(f, pageId);
+        f.dirty = true;
+        f.pins++;
+        f.referenced = true;
+        return f;
+    }
+
+    /**
+     * Releases a pinned page
+     * @param dirty - true if the page was modified while pinned
+     */
+    public void unpin(Frame f, boolean dirty) {
+        if (f.pins <= 0) throw new IllegalStateException("page " + f.pageId + " is not pinned");
+        f.pins--;
+        f.dirty |= dirty;
+    }
+
+    /**
+     * Writes every dirty page back to the file and forces it to disk
+     */
+    public void flush() throws IOException {
+        for (Frame f : frames) {
+            if (f.pageId >= 0 && f.dirty) writeBack(f);
+        }
+        channel.force(false);
+    }
+
+    public long hits() { return hits; }
+
+    public long misses() { return misses; }
+
+    public long evictions() { return evictions; }
+
+    private void attach(Frame f, int pageId) {
+        f.pageId = pageId;
+        f.dirty = false;
+        table.put(pageId, f);
+    }
+
+    // Finds a free or evictable frame with the clock algorithm, writing it back if dirty
+    private Frame victim() throws IOException {
+        for (int step = 0; step < 2 * frames.length; step++) {
+            Frame f = frames[hand];
+            hand = (hand + 1) % frames.length;
+            if (f.pageId < 0) return f;
+            if (f.pins > 0) continue;
+            if (f.referenced) {
+                f.referenced = false;
+                continue;
+            }
+            if (f.dirty) writeBack(f);
+            table.remove(f.pageId);
+            f.pageId = -1;
+            evictions++;
+            return f;
+        }
+        throw new IllegalStateException("all " + frames.length + " pages of the buffer pool are pinned");
+    }
+
+    private void writeBack(Frame f) throws IOException {
+        ByteBuffer b = f.buf.duplicate();
+        b.clear();
+        long pos = (long) f.pageId * pageSize;
+        while (b.hasRemaining()) channel.write(b, pos + b.position());
+        f.dirty = false;
+    }
+}
@@ -0,0 +1,55 @@
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+/**
+ * Thread-safe sorted map that publishes a PersistentAVL through an AtomicReference
+ *
+ * Readers load the current version and search it without any locking or retry, so
+ * reads are wait-free and always see a consistent snapshot. Writers build the next
+ * version from the current one (copying only the path to the key) and install it
+ * with compareAndSet, retrying if another writer got there first.
+ */
+public class ConcurrentAVLMap<K extends Comparable<K>, V> {
+
+    private final AtomicReference<PersistentAVL<K, V>> current = new AtomicReference<>(PersistentAVL.empty());
+
+    public V get(K key) {
+        return current.get().get(key);
+    }
+
+    public boolean containsKey(K key) {
+        return current.get().containsKey(key);
+    }
+
+    public int size() {
+        return current.get().size();
+    }
+
+    /**
+     * Consistent view of the whole map at this instant; later writes do not affect it
+     */
+    public PersistentAVL<K, V> snapshot() {
+        return current.get();
+    }
+
+    public void put(K key, V value) {
+        while (true) {
+            PersistentAVL<K, V> cur = current.get();
+            PersistentAVL<K, V> next = cur.put(key, value);
+            if (next == cur || current.compareAndSet(cur, next)) return;
+        }
+    }
+
+    public void remove(K key) {
+        while (true) {
+            PersistentAVL<K, V> cur = current.get();
+            PersistentAVL<K, V> next = cur.remove(key);
+            if (next == cur || current.compareAndSet(cur, next)) return;
+        }
+    }
+
+    // Iterates over a snapshot, concurrent writes are not seen
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        current.get().forEach(action);
+    }
+}
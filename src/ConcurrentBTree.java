@@ -0,0 +1,339 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+
+/**
+ * Thread-safe B-Tree with int keys, using optimistic lock coupling
+ *
+ * Every node carries a version word. Readers never write to shared memory: they
+ * record a node's version, read the node, and check that the version did not change
+ * before trusting what they read (restarting from the root otherwise). Writers use
+ * the same optimistic descent and only latch, by bumping the version with a CAS, the
+ * nodes they modify: the leaf receiving the key, or a full node and its parent while
+ * it is split. The root pointer is protected by a version word of its own.
+ *
+ * Splits are done preventively on the way down as in [CLRS]; after a split the insert
+ * restarts from the root, which keeps the latching protocol to two nodes at a time.
+ *
+ * Keys are a set: inserting a key that is already present has no effect.
+ *
+ * Implemented operations: insert, contains, height, successor, predecessor
+ */
+
+public class ConcurrentBTree {
+
+    private static final long LOCKED = 2; // version bit set while a writer holds the node
+    private static final VarHandle VERSION;
+
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(Latch.class, "version", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Thrown internally when an optimistic read or a latch upgrade fails
+    private static final class Restart extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Restart() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Restart RESTART = new Restart();
+
+    /**
+     * Version latch: unlocked while (version & LOCKED) == 0, i.e. the version is a
+     * multiple of 4; a writer adds LOCKED to lock and LOCKED again to unlock, so every
+     * modification produces a new version
+     */
+    static class Latch {
+        volatile long version;
+
+        // Version to validate against later; restarts if a writer currently holds the latch
+        long readLockOrRestart() {
+            long v = (long) VERSION.getAcquire(this);
+            if ((v & LOCKED) != 0) {
+                Thread.onSpinWait();
+                throw RESTART;
+            }
+            return v;
+        }
+
+        // Restarts if the latch changed since readLockOrRestart returned v
+        void checkOrRestart(long v) {
+            VarHandle.loadLoadFence();
+            if ((long) VERSION.getAcquire(this) != v) throw RESTART;
+        }
+
+        // Turns an optimistic read at version v into an exclusive latch
+        void upgradeToWriteLockOrRestart(long v) {
+            if (!VERSION.compareAndSet(this, v, v + LOCKED)) throw RESTART;
+        }
+
+        void writeUnlock() {
+            VERSION.setRelease(this, version + LOCKED);
+        }
+    }
+
+    class BTreeNode extends Latch {
+        int n;    // current number of keys contained in node
+        final int key[] = new int[2 * T - 1];           //maximum 2T-1 keys
+        final BTreeNode child[] = new BTreeNode[2 * T]; // maximum 2T children
+        boolean leaf = true;
+    }
+
+    private final int T; // the mindegree of the B-Tree
+    private final Latch rootLatch = new Latch(); // protects the root pointer
+    private volatile BTreeNode root; // root of tree
+
+    /**
+     * Constructor of an empty B-Tree of mindegree T
+     * @param t - degree of B tree
+     */
+    public ConcurrentBTree(int t) {
+        if (t < 2) throw new IllegalArgumentException("mindegree must be at least 2: " + t);
+        T = t;
+        root = new BTreeNode();
+    }
+
+    /**
+     * Number of keys in x that are strictly smaller than k
+     * n is read once and clamped, because a concurrent writer may change it under an
+     * optimistic reader; the caller validates the node version afterwards.
+     */
+    private static int lowerBound(BTreeNode x, int n, int k) {
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (x.key[mid] < k) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int keyCount(BTreeNode x) {
+        int n = x.n;
+        return n < 0 ? 0 : Math.min(n, 2 * T - 1);
+    }
+
+    /**
+     * Inserts key unless it is already present
+     * @return true if the key was added
+     */
+    public boolean insert(int key) {
+        while (true) {
+            try {
+                return tryInsert(key);
+            } catch (Restart e) {
+                // a validation or latch upgrade failed, start again from the root
+            }
+        }
+    }
+
+    private boolean tryInsert(int k) {
+        long rootVersion = rootLatch.readLockOrRestart();
+        BTreeNode node = root;
+        long v = node.readLockOrRestart();
+        rootLatch.checkOrRestart(rootVersion);
+
+        BTreeNode parent = null;
+        long pv = 0;
+        int pos = 0; // position of node in parent
+        while (true) {
+            if (node.n == 2 * T - 1) { // full: split it and try again
+                if (parent == null) {
+                    rootLatch.upgradeToWriteLockOrRestart(rootVersion);
+                    try {
+                        node.upgradeToWriteLockOrRestart(v);
+                    } catch (Restart e) {
+                        rootLatch.writeUnlock();
+                        throw e;
+                    }
+                    BTreeNode s = new BTreeNode();
+                    s.leaf = false;
+                    s.child[0] = node;
+                    split(s, 0, node);
+                    root = s;
+                    node.writeUnlock();
+                    rootLatch.writeUnlock();
+                } else {
+                    parent.upgradeToWriteLockOrRestart(pv);
+                    try {
+                        node.upgradeToWriteLockOrRestart(v);
+                    } catch (Restart e) {
+                        parent.writeUnlock();
+                        throw e;
+                    }
+                    split(parent, pos, node);
+                    node.writeUnlock();
+                    parent.writeUnlock();
+                }
+                throw RESTART;
+            }
+
+            int n = keyCount(node);
+            int i = lowerBound(node, n, k);
+            boolean found = i < n && node.key[i] == k;
+            if (node.leaf) {
+                if (found) {
+                    node.checkOrRestart(v);
+                    return false;
+                }
+                node.upgradeToWriteLockOrRestart(v);
+                if (parent != null) {
+                    try {
+                        parent.checkOrRestart(pv);
+                    } catch (Restart e) {
+                        node.writeUnlock();
+                        throw e;
+                    }
+                }
+                System.arraycopy(node.key, i, node.key, i + 1, node.n - i);
+                node.key[i] = k;
+                node.n = node.n + 1;
+                node.writeUnlock();
+                return true;
+            }
+            BTreeNode c = node.child[i];
+            node.checkOrRestart(v);
+            if (found) return false;
+            if (c == null) throw RESTART;
+            long cv = c.readLockOrRestart();
+            node.checkOrRestart(v); // c is still the child we meant to descend into
+            parent = node;
+            pv = v;
+            pos = i;
+            node = c;
+            v = cv;
+        }
+    }
+
+    /**
+     * Splits y, which must be latched together with its parent x
+     * see [CLRS] algorithm
+     */
+    private void split(BTreeNode x, int pos, BTreeNode y) {
+        BTreeNode z = new BTreeNode();
+        z.leaf = y.leaf;
+        z.n = T - 1;
+        System.arraycopy(y.key, T, z.key, 0, T - 1);
+        if (!y.leaf) {
+            System.arraycopy(y.child, T, z.child, 0, T);
+        }
+        y.n = T - 1;
+        System.arraycopy(x.child, pos + 1, x.child, pos + 2, x.n - pos);
+        x.child[pos + 1] = z;
+        System.arraycopy(x.key, pos, x.key, pos + 1, x.n - pos);
+        x.key[pos] = y.key[T - 1];
+        x.n = x.n + 1;
+    }
+
+    // Root node together with its version, validated against the root latch
+    private BTreeNode readRoot(long[] version) {
+        long rootVersion = rootLatch.readLockOrRestart();
+        BTreeNode node = root;
+        version[0] = node.readLockOrRestart();
+        rootLatch.checkOrRestart(rootVersion);
+        return node;
+    }
+
+    public boolean contains(int key) {
+        long[] version = new long[1];
+        while (true) {
+            try {
+                BTreeNode node = readRoot(version);
+                long v = version[0];
+                while (true) {
+                    int n = keyCount(node);
+                    int i = lowerBound(node, n, key);
+                    boolean found = i < n && node.key[i] == key;
+                    boolean leaf = node.leaf;
+                    BTreeNode c = leaf ? null : node.child[i];
+                    node.checkOrRestart(v);
+                    if (found) return true;
+                    if (leaf) return false;
+                    if (c == null) throw RESTART;
+                    long cv = c.readLockOrRestart();
+                    node.checkOrRestart(v);
+                    node = c;
+                    v = cv;
+                }
+            } catch (Restart e) {
+                // concurrent modification, retry
+            }
+        }
+    }
+
+    public int height() {
+        long[] version = new long[1];
+        while (true) {
+            try {
+                BTreeNode node = readRoot(version);
+                long v = version[0];
+                int h = 1;
+                while (true) {
+                    boolean leaf = node.leaf;
+                    BTreeNode c = node.child[0];
+                    node.checkOrRestart(v);
+                    if (leaf) return h;
+                    if (c == null) throw RESTART;
+                    long cv = c.readLockOrRestart();
+                    node.checkOrRestart(v);
+                    node = c;
+                    v = cv;
+                    h++;
+                }
+            } catch (Restart e) {
+                // concurrent modification, retry
+            }
+        }
+    }
+
+    /**
+     * Smallest key strictly greater than key, or 0 if there is none (as in BTree)
+     */
+    public int successor(int key) {
+        return neighbour(key, true);
+    }
+
+    /**
+     * Largest key strictly smaller than key, or 0 if there is none (as in BTree)
+     */
+    public int predecessor(int key) {
+        return neighbour(key, false);
+    }
+
+    // One optimistic descent; the last candidate seen on the path is the closest one
+    private int neighbour(int key, boolean above) {
+        long[] version = new long[1];
+        while (true) {
+            try {
+                BTreeNode node = readRoot(version);
+                long v = version[0];
+                int result = 0;
+                while (true) {
+                    int n = keyCount(node);
+                    // above: first key > key, below: last key < key
+                    int i = above ? lowerBound(node, n, key + 1) : lowerBound(node, n, key);
+                    if (above && key == Integer.MAX_VALUE) i = n;
+                    int candidate = above ? (i < n ? node.key[i] : result) : (i > 0 ? node.key[i - 1] : result);
+                    boolean leaf = node.leaf;
+                    BTreeNode c = leaf ? null : node.child[i];
+                    node.checkOrRestart(v);
+                    result = candidate;
+                    if (leaf) return result;
+                    if (c == null) throw RESTART;
+                    long cv = c.readLockOrRestart();
+                    node.checkOrRestart(v);
+                    node = c;
+                    v = cv;
+                }
+            } catch (Restart e) {
+                // concurrent modification, retry
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.concurrent.ConcurrentSkipListSet;
+
+
+/**
+ * Throughput of ConcurrentBTree against a synchronized IntBTree and a
+ * ConcurrentSkipListSet, for 1 to 64 threads
+ *
+ * Each thread runs a mix of contains and insert on uniformly random keys for a fixed
+ * time; the tree is pre-filled with half of the key space.
+ *
+ * Usage: java ConcurrentBTreeBenchmark [seconds per run] [insert percentage] [key space]
+ */
+public class ConcurrentBTreeBenchmark {
+
+    interface IntSet {
+        boolean insert(int key);
+        boolean contains(int key);
+    }
+
+    static IntSet olc(int t) {
+        ConcurrentBTree tree = new ConcurrentBTree(t);
+        return new IntSet() {
+            public boolean insert(int key) { return tree.insert(key); }
+            public boolean contains(int key) { return tree.contains(key); }
+        };
+    }
+
+    static IntSet synchronizedTree(int t) {
+        IntBTree tree = new IntBTree(t);
+        return new IntSet() {
+            public synchronized boolean insert(int key) {
+                if (tree.contains(key)) return false;
+                tree.insert(key);
+                return true;
+            }
+            public synchronized boolean contains(int key) { return tree.contains(key); }
+        };
+    }
+
+    static IntSet skipList() {
+        ConcurrentSkipListSet<Integer> set = new ConcurrentSkipListSet<>();
+        return new IntSet() {
+            public boolean insert(int key) { return set.add(key); }
+            public boolean contains(int key) { return set.contains(key); }
+        };
+    }
+
+    static double run(IntSet set, int threads, int seconds, int insertPercent, int keySpace) throws InterruptedException {
+        for (int i = 0; i < keySpace; i += 2) set.insert(i);
+        return Throughput.run(threads, seconds, rnd -> {
+            int key = rnd.nextInt(keySpace);
+            if (rnd.nextInt(100) < insertPercent) set.insert(key);
+            else set.contains(key);
+        });
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int insertPercent = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int keySpace = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+        int t = 64;
+
+        System.out.println("insert%=" + insertPercent + " keys=" + keySpace + " T=" + t + " (ops/s)");
+        System.out.printf("%8s %16s %16s %16s%n", "threads", "ConcurrentBTree", "synchronized", "SkipListSet");
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            double a = run(olc(t), threads, seconds, insertPercent, keySpace);
+            double b = run(synchronizedTree(t), threads, seconds, insertPercent, keySpace);
+            double c = run(skipList(), threads, seconds, insertPercent, keySpace);
+            System.out.printf("%8d %16.0f %16.0f %16.0f%n", threads, a, b, c);
+        }
+    }
+}
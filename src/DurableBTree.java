@@ -0,0 +1,350 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+
+/**
+ * BTree with a write-ahead log and checkpoints, so that mutations survive a restart
+ *
+ * Every insert / remove is appended to dir/wal.log before it is applied to the tree.
+ * Log records are buffered and fsync'ed according to a SyncPolicy (group commit):
+ * after every record, after every n records, every t milliseconds, or only on
+ * checkpoint / close. A checkpoint writes the keys of the tree in order to
+ * dir/snapshot.bin (through a temporary file and an atomic rename) and then truncates
+ * the log. Opening a directory loads the snapshot with BTree.bulkLoad and replays
+ * the log records written after it; a torn record at the end of the log is dropped.
+ *
+ * Keys are a set here: inserting a present key or removing an absent one is not
+ * logged, which also makes replaying the log over a newer snapshot harmless.
+ * All operations are synchronized on the instance.
+ *
+ * Log record:      op (1 byte) | key (int) | CRC32 of op and key (int)
+ * Snapshot file:   magic | version | count | keys... | CRC32 of the keys
+ */
+public class DurableBTree implements Closeable {
+
+    /**
+     * When appended log records are forced to disk
+     */
+    public static final class SyncPolicy {
+        final int everyRecords;    // fsync once this many records are pending, 0 = no limit
+        final long intervalMillis; // fsync pending records at this period, 0 = no timer
+
+        private SyncPolicy(int everyRecords, long intervalMillis) {
+            this.everyRecords = everyRecords;
+            this.intervalMillis = intervalMillis;
+        }
+
+        // fsync before each mutation returns
+        public static SyncPolicy always() {
+            return new SyncPolicy(1, 0);
+        }
+
+        // one fsync per batch of n records
+        public static SyncPolicy everyRecords(int n) {
+            if (n < 1) throw new IllegalArgumentException("batch size must be positive: " + n);
+            return new SyncPolicy(n, 0);
+        }
+
+        // one fsync per time window, a crash loses at most the last window
+        public static SyncPolicy everyMillis(long millis) {
+            if (millis < 1) throw new IllegalArgumentException("interval must be positive: " + millis);
+            return new SyncPolicy(0, millis);
+        }
+
+        // fsync only on checkpoint, sync() and close()
+        public static SyncPolicy never() {
+            return new SyncPolicy(0, 0);
+        }
+
+        public String toString() {
+            if (everyRecords == 1) return "always";
+            if (everyRecords > 1) return "every " + everyRecords + " records";
+            if (intervalMillis > 0) return "every " + intervalMillis + " ms";
+            return "never";
+        }
+    }
+
+    public static final long DEFAULT_CHECKPOINT_BYTES = 64L << 20;
+
+    private static final byte INSERT = 1;
+    private static final byte REMOVE = 2;
+    private static final int RECORD_BYTES = 9;
+    private static final int SNAPSHOT_MAGIC = 0x4254534e; // "BTSN"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final Path dir;
+    private final int t;
+    private final SyncPolicy policy;
+    private final long checkpointBytes;
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer logBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final ScheduledExecutorService flusher;
+
+    private BTree tree;
+    private FileChannel log;
+    private long logBytes;   // bytes in the log file, including the buffer
+    private int pending;     // records not forced to disk yet
+
+    /**
+     * Opens (or creates) the tree stored in dir, recovering it from its snapshot and log
+     * @param t - degree of the B tree
+     * @param policy - when log records are forced to disk
+     * @param checkpointBytes - a checkpoint is taken when the log grows past this size
+     */
+    public DurableBTree(Path dir, int t, SyncPolicy policy, long checkpointBytes) throws IOException {
+        this.dir = dir;
+        this.t = t;
+        this.policy = policy;
+        this.checkpointBytes = checkpointBytes;
+        Files.createDirectories(dir);
+        tree = loadSnapshot();
+        log = FileChannel.open(logFile(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logBytes = replay();
+        log.truncate(logBytes); // drop a torn record left by a crash
+        log.position(logBytes);
+        if (policy.intervalMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread th = new Thread(r, "wal-flusher " + dir);
+                th.setDaemon(true);
+                return th;
+            });
+            flusher.scheduleAtFixedRate(this::syncQuietly, policy.intervalMillis, policy.intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    public DurableBTree(Path dir, int t, SyncPolicy policy) throws IOException {
+        this(dir, t, policy, DEFAULT_CHECKPOINT_BYTES);
+    }
+
+    private Path logFile() {
+        return dir.resolve("wal.log");
+    }
+
+    private Path snapshotFile() {
+        return dir.resolve("snapshot.bin");
+    }
+
+    // ---- operations ----
+
+    public synchronized void insert(int key) {
+        if (tree.contains(key)) return;
+        append(INSERT, key);
+        tree.insert(key);
+        checkpointIfLogFull();
+    }
+
+    public synchronized void remove(int key) {
+        if (!tree.contains(key)) return;
+        append(REMOVE, key);
+        tree.remove(key);
+        checkpointIfLogFull();
+    }
+
+    public synchronized boolean contains(int key) {
+        return tree.contains(key);
+    }
+
+    public synchronized int successor(int key) {
+        return tree.successor(key);
+    }
+
+    public synchronized int predecessor(int key) {
+        return tree.predecessor(key);
+    }
+
+    public synchronized int height() {
+        return tree.height();
+    }
+
+    // ---- log ----
+
+    private void append(byte op, int key) {
+        try {
+            if (logBuffer.remaining() < RECORD_BYTES) writeBuffer();
+            int start = logBuffer.position();
+            logBuffer.put(op).putInt(key);
+            crc.reset();
+            crc.update(logBuffer.duplicate().position(start).limit(start + 5));
+            logBuffer.putInt((int) crc.getValue());
+            logBytes += RECORD_BYTES;
+            pending++;
+            if (policy.everyRecords > 0 && pending >= policy.everyRecords) sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Called once the logged mutation has been applied, so that the snapshot contains it
+    private void checkpointIfLogFull() {
+        if (logBytes < checkpointBytes) return;
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        logBuffer.flip();
+        while (logBuffer.hasRemaining()) log.write(logBuffer);
+        logBuffer.clear();
+    }
+
+    /**
+     * Forces every appended record to disk
+     */
+    public synchronized void sync() throws IOException {
+        writeBuffer();
+        if (pending > 0) {
+            log.force(false);
+            pending = 0;
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            // the next sync or checkpoint reports the failure to a caller
+        }
+    }
+
+    // Applies the log records following the snapshot, returns the length of the valid prefix
+    private long replay() throws IOException {
+        ByteBuffer in = ByteBuffer.allocate(RECORD_BYTES * 4096);
+        long valid = 0;
+        long pos = 0;
+        while (true) {
+            int read = log.read(in, pos);
+            if (read <= 0) break;
+            pos += read;
+            in.flip();
+            while (in.remaining() >= RECORD_BYTES) {
+                int start = in.position();
+                byte op = in.get();
+                int key = in.getInt();
+                crc.reset();
+                crc.update(in.duplicate().position(start).limit(start + 5));
+                if (in.getInt() != (int) crc.getValue() || (op != INSERT && op != REMOVE)) return valid;
+                if (op == INSERT) {
+                    if (!tree.contains(key)) tree.insert(key);
+                } else {
+                    tree.remove(key);
+                }
+                valid += RECORD_BYTES;
+            }
+            in.compact();
+        }
+        return valid;
+    }
+
+    // ---- snapshot ----
+
+    /**
+     * Writes the whole tree to the snapshot file and truncates the log
+     */
+    public synchronized void checkpoint() throws IOException {
+        Path tmp = dir.resolve("snapshot.tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(12);
+            header.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(0).flip(); // count is patched below
+            while (header.hasRemaining()) out.write(header);
+            ByteBuffer buf = ByteBuffer.allocateDirect(64 * 1024);
+            CRC32 sum = new CRC32();
+            int[] count = {0};
+            try {
+                tree.forEach(k -> {
+                    if (!buf.hasRemaining()) drain(out, buf, sum);
+                    buf.putInt(k);
+                    count[0]++;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            drain(out, buf, sum);
+            buf.putInt((int) sum.getValue()).flip();
+            while (buf.hasRemaining()) out.write(buf);
+            header.clear();
+            header.putInt(count[0]).flip();
+            out.write(header, 8);
+            out.force(true);
+        }
+        TreeSnapshot.replace(tmp, snapshotFile()); // the rename is on disk before the log is cut
+
+        // everything in the log is now part of the snapshot
+        logBuffer.clear();
+        log.truncate(0);
+        log.position(0);
+        log.force(false);
+        logBytes = 0;
+        pending = 0;
+    }
+
+    // Writes the keys in buf to out and adds them to the checksum
+    private static void drain(FileChannel out, ByteBuffer buf, CRC32 sum) {
+        try {
+            buf.flip();
+            sum.update(buf.duplicate());
+            while (buf.hasRemaining()) out.write(buf);
+            buf.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private BTree loadSnapshot() throws IOException {
+        Path file = snapshotFile();
+        if (!Files.exists(file)) return new BTree(t);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate((int) in.size());
+            while (buf.hasRemaining()) {
+                if (in.read(buf) < 0) throw new IOException(file + ": truncated snapshot");
+            }
+            buf.flip();
+            if (buf.remaining() < 16 || buf.getInt() != SNAPSHOT_MAGIC || buf.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException(file + ": not a snapshot");
+            }
+            int count = buf.getInt();
+            if (buf.remaining() != 4L * count + 4) throw new IOException(file + ": bad snapshot length");
+            CRC32 sum = new CRC32();
+            sum.update(buf.duplicate().limit(buf.position() + 4 * count));
+            int[] keys = new int[count];
+            buf.asIntBuffer().get(keys);
+            buf.position(buf.position() + 4 * count);
+            if (buf.getInt() != (int) sum.getValue()) throw new IOException(file + ": snapshot checksum mismatch");
+            return BTree.bulkLoad(t, keys);
+        }
+    }
+
+    public void close() throws IOException {
+        if (flusher != null) {
+            // no shutdownNow: interrupting a thread inside FileChannel.force closes the channel
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            try {
+                sync();
+            } finally {
+                log.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+
+/**
+ * Insert throughput of DurableBTree under each SyncPolicy, plus recovery time
+ *
+ * Each policy inserts random keys for a fixed time into a fresh directory, then the
+ * directory is reopened to measure snapshot load + log replay.
+ *
+ * Usage: java DurableBTreeBenchmark [seconds per policy] [directory]
+ */
+public class DurableBTreeBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        Path base = args.length > 1 ? Path.of(args[1]) : Files.createTempDirectory("wal-bench");
+        DurableBTree.SyncPolicy[] policies = {
+                DurableBTree.SyncPolicy.always(),
+                DurableBTree.SyncPolicy.everyRecords(100),
+                DurableBTree.SyncPolicy.everyRecords(10_000),
+                DurableBTree.SyncPolicy.everyMillis(10),
+                DurableBTree.SyncPolicy.never(),
+        };
+        System.out.printf("%-20s %14s %12s %14s%n", "policy", "inserts/s", "inserts", "recovery ms");
+        for (DurableBTree.SyncPolicy policy : policies) {
+            Path dir = base.resolve(policy.toString().replace(' ', '_'));
+            deleteRecursively(dir);
+            long inserts = 0;
+            long begin = System.nanoTime();
+            long deadline = begin + seconds * 1_000_000_000L;
+            try (DurableBTree tree = new DurableBTree(dir, 64, policy)) {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    for (int i = 0; i < 100; i++) tree.insert(rnd.nextInt());
+                    inserts += 100;
+                }
+            }
+            double rate = inserts / ((System.nanoTime() - begin) / 1e9);
+            long open = System.nanoTime();
+            new DurableBTree(dir, 64, DurableBTree.SyncPolicy.never()).close();
+            System.out.printf("%-20s %14.0f %12d %14.1f%n", policy, rate, inserts, (System.nanoTime() - open) / 1e6);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(p);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+
+/**
+ * Point lookup latency of the pointer based trees against their frozen copies:
+ * G_AVL and G_BST against FrozenMap, BTree against FrozenIntSet
+ *
+ * Keys are random ints; half of the probes are present keys and half random ones.
+ * FrozenMap is measured searching with compareTo and with Integer::longValue.
+ * Each figure is the average over three passes after two warm-up passes.
+ *
+ * Usage: java FreezeBenchmark [entries]
+ */
+public class FreezeBenchmark {
+
+    private static long sink;
+
+    static void run(String name, int[] probes, IntPredicate contains) {
+        for (int r = 0; r < 2; r++) for (int k : probes) sink += contains.test(k) ? 1 : 0;
+        long t0 = System.nanoTime();
+        for (int r = 0; r < 3; r++) for (int k : probes) sink += contains.test(k) ? 1 : 0;
+        double ns = (System.nanoTime() - t0) / (3.0 * probes.length);
+        System.out.printf("%-22s %10.1f%n", name, ns);
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random rnd = new Random(42);
+        int[] keys = rnd.ints(n).distinct().toArray();
+        int[] probes = new int[1 << 20];
+        for (int i = 0; i < probes.length; i++) probes[i] = i % 2 == 0 ? keys[rnd.nextInt(keys.length)] : rnd.nextInt();
+
+        System.out.printf("%-22s %10s%n", "structure", "ns/lookup");
+
+        G_AVL<Integer, Integer> avl = new G_AVL<>();
+        for (int k : keys) avl.put(k, k);
+        run("G_AVL.get", probes, k -> avl.get(k) != null);
+        FrozenMap<Integer, Integer> byCompareTo = avl.freeze();
+        run("FrozenMap, compareTo", probes, k -> byCompareTo.get(k) != null);
+        FrozenMap<Integer, Integer> frozenAvl = avl.freeze(Integer::longValue);
+        run("FrozenMap, long keys", probes, k -> frozenAvl.get(k) != null);
+
+        G_BST<Integer, Integer> bst = new G_BST<>(G_BST.Balancing.TREAP);
+        for (int k : keys) bst.put(k, k);
+        run("G_BST.contains", probes, bst::contains);
+        FrozenMap<Integer, Integer> frozenBst = bst.freeze(Integer::longValue);
+        run("FrozenMap, long keys", probes, frozenBst::containsKey);
+
+        BTree btree = BTree.bulkLoad(16, Arrays.stream(keys).sorted().toArray());
+        run("BTree.contains", probes, btree::contains);
+        FrozenIntSet frozenBtree = btree.freeze();
+        run("FrozenIntSet (BTree)", probes, frozenBtree::contains);
+
+        if (sink == 42) System.out.println(); // keep the results alive
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Immutable sorted set of ints in Eytzinger (breadth first) order, made by BTree.freeze()
+ *
+ * Same layout and search as FrozenMap, over a plain int[]: slot k has children 2k and
+ * 2k + 1, the descent always runs to the bottom with the comparison folded into the
+ * next index, and the answer is read off the bits of the final index. With int keys the
+ * comparison compiles to a conditional move, so the loop has no data dependent branch.
+ * Java has no prefetch instruction; the sixteen slots four levels below slot k are
+ * adjacent (64 bytes, one cache line), so the loads of the next levels hit the line the
+ * hardware prefetcher is already bringing in.
+ *
+ * successor and predecessor return 0 when there is no such key, as in BTree.
+ */
+public class FrozenIntSet {
+    private final int[] keys; // keys[1 .. n] in Eytzinger order, slot 0 is unused
+    private final int[] rank; // rank[k] = number of keys smaller than keys[k]
+    private final int n;
+
+    /**
+     * Builds the set from n distinct keys in increasing order
+     */
+    static FrozenIntSet fromSorted(int[] sorted, int n) {
+        return new FrozenIntSet(sorted, n);
+    }
+
+    private FrozenIntSet(int[] sorted, int n) {
+        this.n = n;
+        keys = new int[n + 1];
+        rank = new int[n + 1];
+        layout(sorted, 0, 1);
+    }
+
+    // In-order walk of the implicit tree, filling slot k and its subtree from sorted[i ..]
+    private int layout(int[] sorted, int i, int k) {
+        if (k > n) return i;
+        i = layout(sorted, i, 2 * k);
+        keys[k] = sorted[i];
+        rank[k] = i;
+        return layout(sorted, i + 1, 2 * k + 1);
+    }
+
+    // Slot of the first key >= x, 0 if there is none
+    private int lowerBound(int x) {
+        int k = 1;
+        while (k <= n) k = 2 * k + (keys[k] < x ? 1 : 0);
+        return k >> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+    // Slot of the first key > x, 0 if there is none
+    private int upperBound(int x) {
+        int k = 1;
+        while (k <= n) k = 2 * k + (keys[k] <= x ? 1 : 0);
+        return k >> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+    private int rankOf(int k) {
+        return k == 0 ? n : rank[k];
+    }
+
+    public int size() {
+        return n;
+    }
+
+    public boolean contains(int key) {
+        int k = lowerBound(key);
+        return k != 0 && keys[k] == key;
+    }
+
+    /**
+     * Smallest key strictly greater than key, or 0 if there is none (as in BTree)
+     */
+    public int successor(int key) {
+        int k = upperBound(key);
+        return k == 0 ? 0 : keys[k];
+    }
+
+    /**
+     * Largest key strictly smaller than key, or 0 if there is none (as in BTree)
+     */
+    public int predecessor(int key) {
+        int k = 1;
+        while (k <= n) k = 2 * k + (keys[k] < key ? 1 : 0);
+        k >>= Integer.numberOfTrailingZeros(k) + 1; // last right turn
+        return k == 0 ? 0 : keys[k];
+    }
+
+    // Number of keys k with lo <= k <= hi
+    public int countRange(int lo, int hi) {
+        if (lo > hi) return 0;
+        return rankOf(upperBound(hi)) - rankOf(lowerBound(lo));
+    }
+}
@@ -0,0 +1,154 @@
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Immutable sorted map laid out in Eytzinger (breadth first) order, made by freeze()
+ * on G_AVL and G_BST
+ *
+ * The keys sit in one array in the order of a level order walk of a complete binary
+ * search tree: the children of slot k are the slots 2k and 2k + 1 (slot 0 is unused).
+ * A lookup touches the top levels at the front of the array, which stay in cache
+ * across lookups, and the four levels below any slot are 16 consecutive slots. The
+ * search loop always runs to the bottom and turns the comparison into an index
+ * increment instead of an early exit, so its only branch is the loop condition; the
+ * position of the answer is recovered from the bits of the final index: the last left
+ * turn is the first key >= x, the last right turn is the last key < x.
+ *
+ * rank[k] is the position of slot k in sorted order, which makes range counting two
+ * searches and a subtraction.
+ *
+ * Comparing boxed keys costs a dereference per level, to a key object anywhere in the
+ * heap. When the map is frozen with a key-to-long extractor that is strictly increasing
+ * in key order (Integer::longValue for Integer keys), the searches run on a long[] copy
+ * of the keys instead and only touch the array.
+ */
+public class FrozenMap<K extends Comparable<K>, V> {
+    private final Object[] keys;   // keys[1 .. n] in Eytzinger order
+    private final Object[] values; // values[k] belongs to keys[k]
+    private final int[] rank;      // rank[k] = number of keys smaller than keys[k]
+    private final int n;
+    private final ToLongFunction<? super K> toLong; // null when searching with compareTo
+    private final long[] longKeys;                  // toLong of keys[k], when toLong is set
+
+    /**
+     * Builds the map from n keys in increasing order and their values
+     * @param toLong - strictly increasing key-to-long extractor to search with, or null
+     */
+    static <K extends Comparable<K>, V> FrozenMap<K, V> fromSorted(Object[] sortedKeys, Object[] sortedValues, int n,
+                                                                   ToLongFunction<? super K> toLong) {
+        return new FrozenMap<K, V>(sortedKeys, sortedValues, n, toLong);
+    }
+
+    private FrozenMap(Object[] sortedKeys, Object[] sortedValues, int n, ToLongFunction<? super K> toLong) {
+        this.n = n;
+        this.toLong = toLong;
+        keys = new Object[n + 1];
+        values = new Object[n + 1];
+        rank = new int[n + 1];
+        layout(sortedKeys, sortedValues, 0, 1);
+        if (toLong != null) {
+            longKeys = new long[n + 1];
+            for (int k = 1; k <= n; k++) longKeys[k] = toLong.applyAsLong(key(k));
+        } else {
+            longKeys = null;
+        }
+    }
+
+    // In-order walk of the implicit tree, filling slot k and its subtree from sorted[i ..]
+    private int layout(Object[] sortedKeys, Object[] sortedValues, int i, int k) {
+        if (k > n) return i;
+        i = layout(sortedKeys, sortedValues, i, 2 * k);
+        keys[k] = sortedKeys[i];
+        values[k] = sortedValues[i];
+        rank[k] = i;
+        return layout(sortedKeys, sortedValues, i + 1, 2 * k + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private K key(int k) {
+        return (K) keys[k];
+    }
+
+    /**
+     * Final index of the descent for x: 1 bits are right turns, 0 bits left turns
+     * @param orEqual - also turn right on a key equal to x
+     */
+    private int descend(K x, boolean orEqual) {
+        int k = 1;
+        int bias = orEqual ? 1 : 0; // key < x, or key <= x, as sign of a difference
+        if (longKeys != null) {
+            long lx = toLong.applyAsLong(x);
+            while (k <= n) k = 2 * k + (Long.compare(longKeys[k], lx) < bias ? 1 : 0);
+        } else {
+            while (k <= n) k = 2 * k + (key(k).compareTo(x) < bias ? 1 : 0);
+        }
+        return k;
+    }
+
+    // Slot of the first key >= x, 0 if there is none
+    private int lowerBound(K x) {
+        int k = descend(x, false);
+        return k >> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+    // Slot of the first key > x, 0 if there is none
+    private int upperBound(K x) {
+        int k = descend(x, true);
+        return k >> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+    private boolean matches(int k, K key) {
+        return k != 0 && (longKeys != null ? longKeys[k] == toLong.applyAsLong(key) : key(k).compareTo(key) == 0);
+    }
+
+    // Number of keys smaller than the one in slot k, n for slot 0 (no such key)
+    private int rankOf(int k) {
+        return k == 0 ? n : rank[k];
+    }
+
+    public int size() {
+        return n;
+    }
+
+    public boolean containsKey(K key) {
+        return matches(lowerBound(key), key);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        int k = lowerBound(key);
+        return matches(k, key) ? (V) values[k] : null;
+    }
+
+    // Smallest key strictly greater than key, or null if there is none
+    public K successor(K key) {
+        int k = upperBound(key);
+        return k == 0 ? null : key(k);
+    }
+
+    // Largest key strictly smaller than key, or null if there is none
+    public K predecessor(K key) {
+        int k = descend(key, false);
+        k >>= Integer.numberOfTrailingZeros(k) + 1; // last right turn
+        return k == 0 ? null : key(k);
+    }
+
+    // Number of keys k with lo <= k <= hi
+    public int countRange(K lo, K hi) {
+        if (lo.compareTo(hi) > 0) return 0;
+        return rankOf(upperBound(hi)) - rankOf(lowerBound(lo));
+    }
+
+    // Entries in key order
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        forEach(1, action);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void forEach(int k, BiConsumer<? super K, ? super V> action) {
+        if (k > n) return;
+        forEach(2 * k, action);
+        action.accept(key(k), (V) values[k]);
+        forEach(2 * k + 1, action);
+    }
+}
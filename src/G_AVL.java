@@ -1,19 +1,62 @@
-import java.util.ArrayList;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class G_AVL<K extends Comparable<K>, V> {
-    private class Node {
+    private class Node implements Map.Entry<K, V> {
         K key;
         V value;
         Node left, right;
         int height;
+        int size; // number of nodes in this subtree
 
         Node(K key, V value) {
             this.key = key;
             this.value = value;
             this.height = 0;
+            this.size = 1;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            V old = this.value;
+            this.value = value;
+            if (cache != null) cache.invalidate(key);
+            return old;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return Objects.equals(key, e.getKey()) && Objects.equals(value, e.getValue());
+        }
+
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
         }
 
         public String toString() {
@@ -22,32 +65,69 @@ public class G_AVL<K extends Comparable<K>, V> {
     }
 
     private Node root;
+    private Node[] path = newNodes(16); // see pathStack
+
+    private TreeListener listener; // optional instrumentation, null when disabled
+
+    // Sets the listener notified of rotations, comparisons, lookups and height changes (null disables it)
+    public void setListener(TreeListener listener) {
+        this.listener = listener;
+    }
+
+    private HotKeyCache<K, V> cache; // optional cache in front of get, null when disabled
+
+    /**
+     * Puts cache in front of get: hits skip the walk down the tree, misses fill it
+     * Puts and removes invalidate their key, and split, union, intersection and
+     * difference clear the cache. The cache is emptied here, as it may hold another
+     * tree's entries.
+     * @param cache - the cache, or null to disable caching
+     */
+    public void setCache(HotKeyCache<K, V> cache) {
+        if (cache != null) cache.clear();
+        this.cache = cache;
+    }
+
+    // Empties the cache after an operation that may have changed any key
+    private void invalidateAll() {
+        if (cache != null) cache.clear();
+    }
 
     private int height(Node node) {
         return node == null ? -1 : node.height;
     }
 
+    private int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
     private int balanceFactor(Node node) {
         return height(node.left) - height(node.right);
     }
 
     private Node rotateLeft(Node x) {
+        if (listener != null) listener.onRotateLeft();
         Node y = x.right;
         x.right = y.left;
         y.left = x;
 
         x.height = 1 + Math.max(height(x.left), height(x.right));
         y.height = 1 + Math.max(height(y.left), height(y.right));
+        x.size = 1 + size(x.left) + size(x.right);
+        y.size = 1 + size(y.left) + size(y.right);
         return y;
     }
 
     private Node rotateRight(Node x) {
+        if (listener != null) listener.onRotateRight();
         Node y = x.left;
         x.left = y.right;
         y.right = x;
 
         x.height = 1 + Math.max(height(x.left), height(x.right));
         y.height = 1 + Math.max(height(y.left), height(y.right));
+        x.size = 1 + size(x.left) + size(x.right);
+        y.size = 1 + size(y.left) + size(y.right);
         return y;
     }
 
@@ -56,6 +136,7 @@ public class G_AVL<K extends Comparable<K>, V> {
         if (root == null) return null;
 
         root.height = 1 + Math.max(height(root.left), height(root.right));
+        root.size = 1 + size(root.left) + size(root.right);
         int bf = balanceFactor(root);
 
         // Left heavy
@@ -78,17 +159,43 @@ public class G_AVL<K extends Comparable<K>, V> {
 
     // Put (insert or update)
     public void put(K key, V value) {
-        root = put(root, key, value);
+        int oldHeight = height(root);
+        int top = 0;
+        Node[] path = pathStack();
+        Node x = root;
+        while (x != null) {
+            int cmp = key.compareTo(x.key);
+            if (listener != null) listener.onCompare(1);
+            if (cmp == 0) {
+                x.value = value;
+                if (cache != null) cache.invalidate(key);
+                return;
+            }
+            path[top++] = x;
+            x = cmp < 0 ? x.left : x.right;
+        }
+        Node added = new Node(key, value);
+        if (top == 0) root = added;
+        else if (key.compareTo(path[top - 1].key) < 0) path[top - 1].left = added;
+        else path[top - 1].right = added;
+        retrace(path, top, 1);
+        if (listener != null && height(root) != oldHeight) listener.onHeightChange(oldHeight, height(root));
+    }
+
+    // Recursive put, kept to benchmark the iterative one against
+    void putRecursive(K key, V value) {
+        root = putRecursive(root, key, value);
+        if (cache != null) cache.invalidate(key);
     }
 
-    private Node put(Node root, K key, V value) {
+    private Node putRecursive(Node root, K key, V value) {
         if (root == null) return new Node(key, value);
         int cmp = key.compareTo(root.key);
 
         if (cmp < 0) {
-            root.left = put(root.left, key, value);
+            root.left = putRecursive(root.left, key, value);
         } else if (cmp > 0) {
-            root.right = put(root.right, key, value);
+            root.right = putRecursive(root.right, key, value);
         } else {
             root.value = value;
             return root;
@@ -99,30 +206,139 @@ public class G_AVL<K extends Comparable<K>, V> {
 
     // Get
     public V get(K key) {
-        return get(root, key);
+        if (cache == null) return get(root, key, 0);
+        V value = cache.get(key);
+        if (value == null) {
+            value = get(root, key, 0);
+            cache.fill(key, value);
+        }
+        return value;
     }
 
-    private V get(Node root, K key) {
-        if (root == null) return null;
+    // Whether key is in the map, also when it is mapped to null
+    public boolean containsKey(K key) {
+        if (cache != null && cache.get(key) != null) return true;
+        int visited = 0;
+        Node x = root;
+        while (x != null) {
+            int cmp = key.compareTo(x.key);
+            if (listener != null) listener.onCompare(1);
+            visited++;
+            if (cmp == 0) break;
+            x = cmp < 0 ? x.left : x.right;
+        }
+        if (listener != null) listener.onLookup(visited);
+        if (x != null && cache != null) cache.fill(key, x.value);
+        return x != null;
+    }
+
+    private V get(Node root, K key, int visited) {
+        if (root == null) return lookupDone(visited, null);
         int cmp = key.compareTo(root.key);
-        if (cmp < 0) return get(root.left, key);
-        else if (cmp > 0) return get(root.right, key);
-        else return root.value;
+        if (listener != null) listener.onCompare(1);
+        if (cmp < 0) return get(root.left, key, visited + 1);
+        else if (cmp > 0) return get(root.right, key, visited + 1);
+        else return lookupDone(visited + 1, root.value);
+    }
+
+    /*
+     * Walks for readers that do not keep writers out (the optimistic reads of
+     * ShardedAVLMap). A write running at the same time can show them a torn tree, even
+     * a cycle, so they give up after maxSteps nodes and return null; what they return
+     * only counts if the caller then confirms that no write overlapped them.
+     */
+
+    V getRacy(K key, int maxSteps) {
+        Node cur = root;
+        for (int steps = 0; cur != null && steps < maxSteps; steps++) {
+            K k = cur.key;
+            if (k == null) return null; // node not fully published yet
+            int cmp = key.compareTo(k);
+            if (cmp == 0) return cur.value;
+            cur = cmp < 0 ? cur.left : cur.right;
+        }
+        return null;
+    }
+
+    // Whether key is in the map, false if the walk gave up
+    boolean containsRacy(K key, int maxSteps) {
+        Node cur = root;
+        for (int steps = 0; cur != null && steps < maxSteps; steps++) {
+            K k = cur.key;
+            if (k == null) return false; // node not fully published yet
+            int cmp = key.compareTo(k);
+            if (cmp == 0) return true;
+            cur = cmp < 0 ? cur.left : cur.right;
+        }
+        return false;
+    }
+
+    // Smallest key, or the largest if last; null if the map is empty
+    K edgeKeyRacy(boolean last, int maxSteps) {
+        Node cur = root;
+        if (cur == null) return null;
+        for (int steps = 0; steps < maxSteps; steps++) {
+            Node next = last ? cur.right : cur.left;
+            if (next == null) return cur.key;
+            cur = next;
+        }
+        return null;
+    }
+
+    private V lookupDone(int visited, V value) {
+        if (listener != null) listener.onLookup(visited);
+        return value;
     }
 
     // Remove
     public void remove(K key) {
-        root = remove(root, key);
+        int oldHeight = height(root);
+        int top = 0;
+        Node[] path = pathStack();
+        Node x = root;
+        while (x != null) {
+            int cmp = key.compareTo(x.key);
+            if (listener != null) listener.onCompare(1);
+            if (cmp == 0) break;
+            path[top++] = x;
+            x = cmp < 0 ? x.left : x.right;
+        }
+        if (x == null) return; // not found, nothing changes
+        if (cache != null) cache.invalidate(key);
+
+        Node removed = x; // node unlinked from the tree: x itself, or its in-order predecessor
+        if (x.left != null && x.right != null) {
+            path[top++] = x;
+            removed = x.left;
+            while (removed.right != null) {
+                path[top++] = removed;
+                removed = removed.right;
+            }
+            x.key = removed.key;
+            x.value = removed.value;
+        }
+        Node child = removed.left != null ? removed.left : removed.right;
+        if (top == 0) root = child;
+        else if (path[top - 1].left == removed) path[top - 1].left = child;
+        else path[top - 1].right = child;
+        retrace(path, top, -1);
+        if (listener != null && height(root) != oldHeight) listener.onHeightChange(oldHeight, height(root));
+    }
+
+    // Recursive remove, kept to benchmark the iterative one against
+    void removeRecursive(K key) {
+        root = removeRecursive(root, key);
+        if (cache != null) cache.invalidate(key);
     }
 
-    private Node remove(Node root, K key) {
+    private Node removeRecursive(Node root, K key) {
         if (root == null) return null;
         int cmp = key.compareTo(root.key);
 
         if (cmp < 0) {
-            root.left = remove(root.left, key);
+            root.left = removeRecursive(root.left, key);
         } else if (cmp > 0) {
-            root.right = remove(root.right, key);
+            root.right = removeRecursive(root.right, key);
         } else {
             if (root.left == null) return root.right;
             if (root.right == null) return root.left;
@@ -130,12 +346,50 @@ public class G_AVL<K extends Comparable<K>, V> {
             Node pred = findMax(root.left);  // In-order predecessor
             root.key = pred.key;
             root.value = pred.value;
-            root.left = remove(root.left, pred.key);
+            root.left = removeRecursive(root.left, pred.key);
         }
 
         return balance(root);
     }
 
+    /**
+     * Walks back up path[0 .. top) after a node was linked or unlinked below path[top - 1]
+     * Ancestors are rebalanced only until one of them keeps its height: nothing above it
+     * can become unbalanced, so from there on only the subtree sizes change by delta.
+     */
+    private void retrace(Node[] path, int top, int delta) {
+        int i = top - 1;
+        for (; i >= 0; i--) {
+            Node x = path[i];
+            int oldHeight = x.height;
+            Node y = balance(x);
+            if (y != x) {
+                if (i == 0) root = y;
+                else if (path[i - 1].left == x) path[i - 1].left = y;
+                else path[i - 1].right = y;
+            }
+            path[i] = null;
+            if (y.height == oldHeight) break;
+        }
+        for (i--; i >= 0; i--) {
+            path[i].size += delta;
+            path[i] = null;
+        }
+    }
+
+    // Reusable stack for the path from the root, long enough for one more level than the tree has
+    private Node[] pathStack() {
+        if (path.length < height(root) + 3) {
+            path = newNodes(2 * (height(root) + 3));
+        }
+        return path;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node[] newNodes(int n) {
+        return (Node[]) Array.newInstance(Node.class, n);
+    }
+
     private Node findMax(Node root) {
         while (root.right != null) root = root.right;
         return root;
@@ -146,18 +400,569 @@ public class G_AVL<K extends Comparable<K>, V> {
         return root;
     }
 
-    // Get all entries in sorted order
-    public Iterable<Node> getEntries() {
-        List<Node> result = new ArrayList<>();
-        inOrder(root, result);
+    // Number of entries
+    public int size() {
+        return size(root);
+    }
+
+    // Number of keys strictly smaller than key
+    public int rank(K key) {
+        return rank(key, false);
+    }
+
+    // Number of keys smaller than key, or smaller or equal if inclusive
+    private int rank(K key, boolean inclusive) {
+        int r = 0;
+        Node cur = root;
+        while (cur != null) {
+            int cmp = key.compareTo(cur.key);
+            if (cmp < 0 || (cmp == 0 && !inclusive)) {
+                cur = cur.left;
+            } else {
+                r += size(cur.left) + 1;
+                if (cmp == 0) break;
+                cur = cur.right;
+            }
+        }
+        return r;
+    }
+
+    // Key with the given rank (0 = smallest)
+    public K select(int i) {
+        if (i < 0 || i >= size()) throw new IndexOutOfBoundsException("rank " + i + " out of [0, " + size() + ")");
+        Node cur = root;
+        while (true) {
+            int leftSize = size(cur.left);
+            if (i < leftSize) {
+                cur = cur.left;
+            } else if (i > leftSize) {
+                i -= leftSize + 1;
+                cur = cur.right;
+            } else {
+                return cur.key;
+            }
+        }
+    }
+
+    // Number of keys k with lo <= k <= hi
+    public int countRange(K lo, K hi) {
+        if (lo.compareTo(hi) > 0) return 0;
+        return rank(hi, true) - rank(lo, false);
+    }
+
+    // Key at percentile p (0..100) by the nearest-rank method, null if the map is empty
+    public K percentile(double p) {
+        if (p < 0 || p > 100) throw new IllegalArgumentException("percentile must be in [0, 100]: " + p);
+        if (root == null) return null;
+        int rank = (int) Math.ceil(p / 100 * size());
+        return select(Math.max(rank, 1) - 1);
+    }
+
+    /**
+     * Height, order, AVL balance, size and depth histogram in one pass, see TreeDiagnostics
+     * Also checks the height and size cached in every node.
+     * @param parallel - walk the subtrees below the top levels as fork-join tasks
+     */
+    public TreeDiagnostics.Report diagnose(boolean parallel) {
+        return TreeDiagnostics.run(new TreeDiagnostics.Adapter<Node>() {
+            public Node root() { return root; }
+            public int keys(Node node) { return 1; }
+            public int children(Node node) { return 2; }
+            public Node child(Node node, int i) { return i == 0 ? node.left : node.right; }
+            public int compare(Node a, int i, Node b, int j) { return a.key.compareTo(b.key); }
+            public int maxHeightSkew() { return 1; }
+            public boolean checkNode(Node node, boolean isRoot) {
+                return node.height == 1 + Math.max(height(node.left), height(node.right))
+                        && node.size == 1 + size(node.left) + size(node.right);
+            }
+        }, parallel);
+    }
+
+    // Read-only copy laid out for fast lookups, see FrozenMap
+    public FrozenMap<K, V> freeze() {
+        return freeze(null);
+    }
+
+    /**
+     * Read-only copy that searches on toLong of the keys, see FrozenMap
+     * @param toLong - strictly increasing in key order, e.g. Integer::longValue
+     */
+    public FrozenMap<K, V> freeze(ToLongFunction<? super K> toLong) {
+        Object[] keys = new Object[size()];
+        Object[] values = new Object[size()];
+        int i = 0;
+        for (Map.Entry<K, V> e : getEntries()) {
+            keys[i] = e.getKey();
+            values[i++] = e.getValue();
+        }
+        return FrozenMap.<K, V>fromSorted(keys, values, i, toLong);
+    }
+
+    // ---- join based bulk operations ----
+    // The operations below take the nodes of the other map (which is left empty) and
+    // relink them; the two recursive halves run as fork-join tasks for large inputs.
+
+    private static final int PARALLEL_GRAIN = 1 << 13; // subtrees smaller than this stay sequential
+
+    // Result of splitting a tree by a key: nodes smaller, the node equal (if any), nodes greater
+    private class Split {
+        Node left, mid, right;
+    }
+
+    /**
+     * Joins l, the single node k and r, where every key of l < k.key < every key of r
+     * Walks down the spine of the taller tree to a subtree of about the height of the
+     * other one, links k there and rebalances on the way back up.
+     */
+    private Node link(Node l, Node k, Node r) {
+        if (height(l) > height(r) + 1) {
+            l.right = link(l.right, k, r);
+            return balance(l);
+        }
+        if (height(r) > height(l) + 1) {
+            r.left = link(l, k, r.left);
+            return balance(r);
+        }
+        k.left = l;
+        k.right = r;
+        return balance(k);
+    }
+
+    // Joins l and r, where every key of l < every key of r
+    private Node concat(Node l, Node r) {
+        if (l == null) return r;
+        if (r == null) return l;
+        Node max = findMax(l);
+        return link(removeMaxNode(l), max, r);
+    }
+
+    private Node removeMaxNode(Node root) {
+        if (root.right == null) return root.left;
+        root.right = removeMaxNode(root.right);
+        return balance(root);
+    }
+
+    private Split split(Node t, K key) {
+        if (t == null) return new Split();
+        int cmp = key.compareTo(t.key);
+        Node l = t.left, r = t.right;
+        Split s;
+        if (cmp < 0) {
+            s = split(l, key);
+            s.right = link(s.right, t, r);
+        } else if (cmp > 0) {
+            s = split(r, key);
+            s.left = link(l, t, s.left);
+        } else {
+            s = new Split();
+            s.left = l;
+            s.right = r;
+            s.mid = t;
+            t.left = t.right = null;
+        }
+        return s;
+    }
+
+    private abstract class JoinTask extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+
+        final Node a, b;
+        final int work; // size(a) + size(b) on entry, before compute splits and relinks a
+
+        JoinTask(Node a, Node b) {
+            this.a = a;
+            this.b = b;
+            this.work = size(a) + size(b);
+        }
+
+        abstract JoinTask child(Node a, Node b);
+
+        Node lo, hi; // results of the two halves
+
+        // runs the two halves, forking the left one if the inputs are large enough
+        void both(Node a1, Node b1, Node a2, Node b2) {
+            JoinTask left = child(a1, b1), right = child(a2, b2);
+            if (work < PARALLEL_GRAIN) {
+                lo = left.compute();
+                hi = right.compute();
+            } else {
+                left.fork();
+                hi = right.compute();
+                lo = left.join();
+            }
+        }
+
+        Node computeDirectly() {
+            return compute();
+        }
+    }
+
+    // Union, b's values win on equal keys
+    private class UnionTask extends JoinTask {
+        private static final long serialVersionUID = 1L;
+
+        UnionTask(Node a, Node b) { super(a, b); }
+
+        JoinTask child(Node a, Node b) { return new UnionTask(a, b); }
+
+        protected Node compute() {
+            if (a == null) return b;
+            if (b == null) return a;
+            Node bl = b.left, br = b.right;
+            Split s = split(a, b.key);
+            both(s.left, bl, s.right, br);
+            return link(lo, b, hi);
+        }
+    }
+
+    // Intersection, a's values are kept
+    private class IntersectionTask extends JoinTask {
+        private static final long serialVersionUID = 1L;
+
+        IntersectionTask(Node a, Node b) { super(a, b); }
+
+        JoinTask child(Node a, Node b) { return new IntersectionTask(a, b); }
+
+        protected Node compute() {
+            if (a == null || b == null) return null;
+            Node al = a.left, ar = a.right;
+            Split s = split(b, a.key);
+            both(al, s.left, ar, s.right);
+            return s.mid != null ? link(lo, a, hi) : concat(lo, hi);
+        }
+    }
+
+    // Keys of a that are not in b
+    private class DifferenceTask extends JoinTask {
+        private static final long serialVersionUID = 1L;
+
+        DifferenceTask(Node a, Node b) { super(a, b); }
+
+        JoinTask child(Node a, Node b) { return new DifferenceTask(a, b); }
+
+        protected Node compute() {
+            if (a == null) return null;
+            if (b == null) return a;
+            Node bl = b.left, br = b.right;
+            Split s = split(a, b.key);
+            both(s.left, bl, s.right, br);
+            return concat(lo, hi);
+        }
+    }
+
+    private Node run(JoinTask task) {
+        if (task.work < PARALLEL_GRAIN) return task.computeDirectly();
+        return ForkJoinPool.commonPool().invoke(task);
+    }
+
+    // Moves every entry with key >= key into a new map, this map keeps the smaller ones
+    public G_AVL<K, V> split(K key) {
+        Split s = split(root, key);
+        root = s.left;
+        invalidateAll();
+        G_AVL<K, V> greater = new G_AVL<>();
+        greater.root = s.mid == null ? s.right : link(null, s.mid, s.right);
+        return greater;
+    }
+
+    // Appends other, whose keys must all be greater than the keys of this map; other is left empty
+    public void join(G_AVL<K, V> other) {
+        if (root != null && other.root != null && findMax(root).key.compareTo(findMin(other.root).key) >= 0) {
+            throw new IllegalArgumentException("keys of the joined map must be greater than the keys of this map");
+        }
+        root = concat(root, other.root); // adds keys only, what is cached stays valid
+        other.root = null;
+        other.invalidateAll();
+    }
+
+    // Adds the entries of other, whose values win on equal keys; other is left empty
+    public void union(G_AVL<K, V> other) {
+        if (other == this) return; // already holds every key and value of other
+        root = run(new UnionTask(root, other.root));
+        other.root = null;
+        invalidateAll();
+        other.invalidateAll();
+    }
+
+    // Keeps only the keys also present in other; other is left empty
+    public void intersection(G_AVL<K, V> other) {
+        if (other == this) return; // every key is also present in other
+        root = run(new IntersectionTask(root, other.root));
+        other.root = null;
+        invalidateAll();
+        other.invalidateAll();
+    }
+
+    // Removes the keys present in other; other is left empty
+    public void difference(G_AVL<K, V> other) {
+        if (other == this) { // every key is present in other
+            root = null;
+            invalidateAll();
+            return;
+        }
+        root = run(new DifferenceTask(root, other.root));
+        other.root = null;
+        invalidateAll();
+        other.invalidateAll();
+    }
+
+    /**
+     * Puts a batch of entries, in any order; on equal keys the last entry wins
+     * The batch is sorted, built into a balanced tree in linear time, then merged with
+     * union, which walks the two trees together once (in parallel for large ones).
+     */
+    public void putAll(List<? extends Map.Entry<? extends K, ? extends V>> entries) {
+        Object[] sortedKeys = new Object[entries.size()];
+        Object[] sortedValues = new Object[sortedKeys.length];
+        int n = Batches.sortEntries(entries, sortedKeys, sortedValues);
+        Node built = build(sortedKeys, sortedValues, 0, n);
+        root = run(new UnionTask(root, built));
+        if (cache != null) {
+            for (int i = 0; i < n; i++) cache.invalidate(keyAt(sortedKeys, i));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private K keyAt(Object[] keys, int i) {
+        return (K) keys[i];
+    }
+
+    /**
+     * Values of a batch of keys, in the order of keys (null for absent keys)
+     * The batch is sorted and looked up in a single walk from the root: each node sends
+     * the part of the batch smaller than its key to its left subtree and the larger part
+     * to its right, so a node shared by the paths of many keys is visited once for all
+     * of them. Where both parts have keys and the part is PARALLEL_GRAIN keys or more,
+     * the two subtrees are searched in parallel on the common fork-join pool.
+     */
+    public List<V> getAll(List<? extends K> keys) {
+        Object[] batch = keys.toArray();
+        int[] order = Batches.sortedOrder(batch);
+        Object[] sorted = new Object[order.length];
+        for (int i = 0; i < order.length; i++) sorted[i] = batch[order[i]];
+        Object[] values = new Object[order.length];
+        new GetAllTask(root, sorted, order, values, 0, order.length).invoke();
+        @SuppressWarnings("unchecked")
+        List<V> result = (List<V>) Arrays.asList(values);
         return result;
     }
 
-    private void inOrder(Node root, List<Node> list) {
-        if (root == null) return;
-        inOrder(root.left, list);
-        list.add(root);
-        inOrder(root.right, list);
+    // Looks up sorted[from, to) below node, writing the value of sorted[i] to values[order[i]]
+    private final class GetAllTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Node node;
+        private final Object[] sorted;
+        private final int[] order;
+        private final Object[] values;
+        private final int from, to;
+
+        GetAllTask(Node node, Object[] sorted, int[] order, Object[] values, int from, int to) {
+            this.node = node;
+            this.sorted = sorted;
+            this.order = order;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            lookup(node, from, to);
+        }
+
+        private void lookup(Node x, int from, int to) {
+            while (x != null && from < to) {
+                int lo = bound(sorted, from, to, x.key, false);
+                int hi = bound(sorted, lo, to, x.key, true);
+                for (int i = lo; i < hi; i++) values[order[i]] = x.value;
+                if (to - from >= PARALLEL_GRAIN && lo > from && hi < to) {
+                    GetAllTask right = new GetAllTask(x.right, sorted, order, values, hi, to);
+                    right.fork();
+                    lookup(x.left, from, lo);
+                    right.join();
+                    return;
+                }
+                lookup(x.left, from, lo);
+                x = x.right;
+                from = hi;
+            }
+        }
+    }
+
+    // First index in sorted[from, to) whose key is >= key, or > key if upper
+    private int bound(Object[] sorted, int from, int to, K key, boolean upper) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            int cmp = keyAt(sorted, mid).compareTo(key);
+            if (cmp < 0 || (upper && cmp == 0)) from = mid + 1;
+            else to = mid;
+        }
+        return from;
+    }
+
+    // Balanced tree of keys[from, to) and their values
+    @SuppressWarnings("unchecked")
+    private Node build(Object[] keys, Object[] values, int from, int to) {
+        if (from >= to) return null;
+        int mid = (from + to) >>> 1;
+        Node n = new Node((K) keys[mid], (V) values[mid]);
+        n.left = build(keys, values, from, mid);
+        n.right = build(keys, values, mid + 1, to);
+        return balance(n);
+    }
+
+    /**
+     * Writes the entries to file in the TreeSnapshot format, streaming them from the tree
+     */
+    public void save(Path file, TreeSnapshot.Codec<K> keys, TreeSnapshot.Codec<V> values) throws IOException {
+        TreeSnapshot.write(file, keys, values, action -> {
+            for (Map.Entry<K, V> e : getEntries()) action.accept(e.getKey(), e.getValue());
+        });
+    }
+
+    // Map read from a snapshot written by save, built balanced in linear time
+    public static <K extends Comparable<K>, V> G_AVL<K, V> load(Path file, TreeSnapshot.Codec<K> keys,
+                                                                TreeSnapshot.Codec<V> values) throws IOException {
+        TreeSnapshot.Entries e = TreeSnapshot.read(file, keys, values);
+        G_AVL<K, V> map = new G_AVL<>();
+        map.root = map.build(e.keys, e.values, 0, e.count);
+        return map;
+    }
+
+    // All entries in sorted order, produced lazily while iterating
+    public Iterable<Map.Entry<K, V>> getEntries() {
+        return new SubMap(null, null);
+    }
+
+    // Entries with key < toKey
+    public SubMap headMap(K toKey) {
+        return new SubMap(null, Objects.requireNonNull(toKey));
+    }
+
+    // Entries with key >= fromKey
+    public SubMap tailMap(K fromKey) {
+        return new SubMap(Objects.requireNonNull(fromKey), null);
+    }
+
+    // Entries with fromKey <= key < toKey
+    public SubMap subMap(K fromKey, K toKey) {
+        return new SubMap(Objects.requireNonNull(fromKey), Objects.requireNonNull(toKey));
+    }
+
+    public Stream<Map.Entry<K, V>> stream() {
+        return new SubMap(null, null).stream();
+    }
+
+    /**
+     * Lazy view of the entries with lo <= key < hi (a null bound is unbounded)
+     * Nothing is copied: iterating walks the tree with an O(height) stack, and the
+     * spliterator splits at subtree boundaries so parallel streams divide the work.
+     * The view reflects the tree when iteration starts; the tree must not be modified
+     * while a view is being iterated.
+     */
+    public class SubMap implements Iterable<Map.Entry<K, V>> {
+        private final K lo, hi;
+
+        SubMap(K lo, K hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return Spliterators.iterator(spliterator());
+        }
+
+        public Spliterator<Map.Entry<K, V>> spliterator() {
+            EntrySpliterator s = new EntrySpliterator(hi);
+            for (Node n = root; n != null; ) { // path to the first key >= lo
+                if (lo == null || n.key.compareTo(lo) >= 0) {
+                    s.push(n);
+                    n = n.left;
+                } else {
+                    n = n.right;
+                }
+            }
+            return s;
+        }
+
+        public Stream<Map.Entry<K, V>> stream() {
+            return StreamSupport.stream(spliterator(), false);
+        }
+    }
+
+    /**
+     * In-order traversal state: a stack of nodes, smallest on top, where each node
+     * stands for itself followed by its right subtree. The cut bottom-most entries had
+     * their right subtree handed to another spliterator by trySplit and stand for
+     * themselves only.
+     */
+    private class EntrySpliterator implements Spliterator<Map.Entry<K, V>> {
+        private Node[] stack;
+        private int top;   // number of nodes on the stack
+        private int cut;   // stack[0 .. cut) have no right subtree left
+        private final K hi;
+
+        EntrySpliterator(K hi) {
+            this.stack = newNodes(height(root) + 2);
+            this.hi = hi;
+        }
+
+        void push(Node n) {
+            if (top == stack.length) stack = Arrays.copyOf(stack, Math.max(4, 2 * top));
+            stack[top++] = n;
+        }
+
+        // pushes n and the left spine below it
+        void pushLeftSpine(Node n) {
+            for (; n != null; n = n.left) push(n);
+        }
+
+        public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+            if (top == 0) return false;
+            Node n = stack[top - 1];
+            if (hi != null && n.key.compareTo(hi) >= 0) {
+                top = 0; // everything left is >= hi
+                return false;
+            }
+            top--;
+            if (top >= cut) pushLeftSpine(n.right);
+            else cut = top;
+            action.accept(n);
+            return true;
+        }
+
+        public Spliterator<Map.Entry<K, V>> trySplit() {
+            int j = cut;
+            while (j < top && stack[j].right == null) j++;
+            if (j == top || (hi != null && stack[j].key.compareTo(hi) >= 0)) return null;
+            // the prefix takes stack[j .. top) with stack[j]'s right subtree cut off, this
+            // spliterator keeps stack[0 .. j) and continues with that right subtree first
+            EntrySpliterator prefix = new EntrySpliterator(hi);
+            prefix.stack = Arrays.copyOfRange(stack, j, stack.length);
+            prefix.top = top - j;
+            prefix.cut = 1;
+            Node right = stack[j].right;
+            top = j;
+            pushLeftSpine(right);
+            return prefix;
+        }
+
+        public long estimateSize() {
+            long size = 0;
+            for (int i = 0; i < top; i++) {
+                size++;
+                if (i >= cut) size += size(stack[i].right);
+            }
+            return size;
+        }
+
+        public int characteristics() {
+            return ORDERED | SORTED | DISTINCT | NONNULL;
+        }
+
+        public Comparator<? super Map.Entry<K, V>> getComparator() {
+            return Map.Entry.comparingByKey();
+        }
     }
 
     // Optional: display tree level by level (BFS)
@@ -208,5 +1013,18 @@ public class G_AVL<K extends Comparable<K>, V> {
 
         System.out.println("\nLevel-order after deletion:");
         avl.displayLevels();
+
+        // Bulk set operations
+        G_AVL<Integer, String> other = new G_AVL<>();
+        other.putAll(List.of(Map.entry(10, "H"), Map.entry(40, "I"), Map.entry(90, "J")));
+        avl.union(other);
+        System.out.println("\nAfter union with {10, 40, 90}:");
+        avl.displayLevels();
+
+        G_AVL<Integer, String> greater = avl.split(60);
+        System.out.println("\nSplit at 60, keys below:");
+        avl.displayLevels();
+        System.out.println("keys from 60 on:");
+        greater.displayLevels();
     }
 }
@@ -1,11 +1,34 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToLongFunction;
 
 public class G_BST<K extends Comparable<K>, V> {
+
+    /**
+     * How put and delete keep the tree shallow
+     * NONE      - plain BST, sorted input degenerates it into a list
+     * SCAPEGOAT - a put deeper than log_{3/2}(n) rebuilds the lowest unbalanced subtree on
+     *             its path, and the whole tree is rebuilt once deletes shrink it below 2/3
+     *             of its size at the last rebuild
+     * TREAP     - every node gets a random priority and rotations keep the priorities in
+     *             heap order, so the shape is that of a random BST whatever the input order
+     */
+    public enum Balancing { NONE, SCAPEGOAT, TREAP }
+
     private class Node {
         K key;
         V value;
         Node left, right;
+        int priority; // TREAP only, parents have higher priority than their children
 
         Node(K key, V value) {
             this.key = key;
@@ -22,49 +45,392 @@ public class G_BST<K extends Comparable<K>, V> {
     }
 
     private Node root;
+    private final Balancing balancing;
+    private int size;        // number of keys
+    private int maxSize;     // SCAPEGOAT: largest size since the whole tree was last rebuilt
+    private Node[] path = newNodes(16); // reusable stack for the path from the root
+
+    private TreeListener listener; // optional instrumentation, null when disabled
+
+    public G_BST() {
+        this(Balancing.NONE);
+    }
+
+    public G_BST(Balancing balancing) {
+        this.balancing = balancing;
+    }
+
+    // Sets the listener notified of comparisons, lookups and treap rotations (null disables it)
+    public void setListener(TreeListener listener) {
+        this.listener = listener;
+    }
+
+    private HotKeyCache<K, V> cache; // optional cache in front of get and contains, null when disabled
+
+    /**
+     * Puts cache in front of get and contains: hits skip the walk down the tree, which
+     * without balancing can be as long as the tree, and misses fill it
+     * Puts and deletes invalidate their key. The cache is emptied here, as it may hold
+     * another tree's entries. Keys with a null value are never cached.
+     * @param cache - the cache, or null to disable caching
+     */
+    public void setCache(HotKeyCache<K, V> cache) {
+        if (cache != null) cache.clear();
+        this.cache = cache;
+    }
+
+    public Balancing balancing() {
+        return balancing;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node[] newNodes(int n) {
+        return (Node[]) java.lang.reflect.Array.newInstance(Node.class, n);
+    }
+
+    // Stores x at path[i], growing the stack when the tree got deeper
+    private void push(int i, Node x) {
+        if (i == path.length) path = Arrays.copyOf(path, 2 * i);
+        path[i] = x;
+    }
+
+    // Drops the references held by path[0 .. top)
+    private void clearPath(int top) {
+        Arrays.fill(path, 0, top, null);
+    }
 
     // Inorder traversal
     public void inorder() {
-        inorder(root);
+        Cursor c = ascending();
+        while (c.hasNext()) System.out.print(c.nextNode() + " ");
         System.out.println();
     }
 
-    private void inorder(Node root) {
-        if (root == null) return;
-        inorder(root.left);
-        System.out.print(root + " ");
-        inorder(root.right);
-    }
-
     // Contains method
     public boolean contains(K key) {
-        return contains(root, key);
+        if (cache != null && cache.get(key) != null) return true;
+        Node x = find(key);
+        if (x != null && cache != null) cache.fill(key, x.value);
+        return x != null;
+    }
+
+    // Value of key, null if absent
+    public V get(K key) {
+        if (cache != null) {
+            V value = cache.get(key);
+            if (value != null) return value;
+        }
+        Node x = find(key);
+        if (x == null) return null;
+        if (cache != null) cache.fill(key, x.value);
+        return x.value;
+    }
+
+    // Node of key, null if absent
+    private Node find(K key) {
+        int visited = 0;
+        Node x = root;
+        while (x != null) {
+            int cmp = x.key.compareTo(key);
+            if (listener != null) listener.onCompare(1);
+            visited++;
+            if (cmp == 0) return lookupDone(visited, x);
+            x = cmp < 0 ? x.right : x.left;  // go right if x.key < key
+        }
+        return lookupDone(visited, null);
+    }
+
+    private Node lookupDone(int visited, Node found) {
+        if (listener != null) listener.onLookup(visited);
+        return found;
+    }
+
+    // ---- batches ----
+
+    private static final int PARALLEL_GRAIN = 1 << 13; // parts of a batch smaller than this stay sequential
+
+    /**
+     * Which keys of a batch are in the tree: result[i] is whether keys.get(i) is there
+     * The batch is sorted and searched in a single walk from the root: each node sends
+     * the part of the batch smaller than its key to its left subtree and the larger part
+     * to its right, so a node on the paths of many keys is visited once for all of them.
+     * The walk keeps its own stack, so a degenerate tree costs time but no recursion
+     * depth. A part of PARALLEL_GRAIN keys or more with keys on both sides of a node
+     * hands its smaller side to the common fork-join pool; forking only the smaller side
+     * keeps the nesting of forked tasks logarithmic in the batch even on a degenerate tree.
+     */
+    public boolean[] containsAll(List<? extends K> keys) {
+        Object[] batch = keys.toArray();
+        int[] order = Batches.sortedOrder(batch);
+        Object[] sorted = new Object[order.length];
+        for (int i = 0; i < order.length; i++) sorted[i] = batch[order[i]];
+        boolean[] found = new boolean[order.length];
+        new ContainsAllTask(root, sorted, order, found, 0, order.length).invoke();
+        return found;
+    }
+
+    // Searches sorted[from, to) below node, setting found[order[i]] for the keys present
+    private final class ContainsAllTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Node node;
+        private final Object[] sorted;
+        private final int[] order;
+        private final boolean[] found;
+        private final int from, to;
+
+        ContainsAllTask(Node node, Object[] sorted, int[] order, boolean[] found, int from, int to) {
+            this.node = node;
+            this.sorted = sorted;
+            this.order = order;
+            this.found = found;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            ArrayDeque<ContainsAllTask> pending = new ArrayDeque<>(); // parts left for this thread
+            List<ContainsAllTask> forked = new ArrayList<>();
+            Node x = node;
+            int from = this.from, to = this.to;
+            while (true) {
+                while (x != null && from < to) {
+                    int lo = bound(sorted, from, to, x.key, false);
+                    int hi = bound(sorted, lo, to, x.key, true);
+                    for (int i = lo; i < hi; i++) found[order[i]] = true;
+                    boolean leftLarger = lo - from >= to - hi;
+                    if (lo > from && hi < to) { // set the smaller side aside, so forked parts at least halve
+                        ContainsAllTask smaller = leftLarger
+                                ? new ContainsAllTask(x.right, sorted, order, found, hi, to)
+                                : new ContainsAllTask(x.left, sorted, order, found, from, lo);
+                        if (to - from >= PARALLEL_GRAIN) {
+                            smaller.fork();
+                            forked.add(smaller);
+                        } else {
+                            pending.push(smaller);
+                        }
+                    }
+                    if (leftLarger) {
+                        x = x.left;
+                        to = lo;
+                    } else {
+                        x = x.right;
+                        from = hi;
+                    }
+                }
+                ContainsAllTask next = pending.poll();
+                if (next == null) break;
+                x = next.node;
+                from = next.from;
+                to = next.to;
+            }
+            for (ContainsAllTask t : forked) t.join();
+        }
+    }
+
+    // First index in sorted[from, to) whose key is >= key, or > key if upper
+    @SuppressWarnings("unchecked")
+    private int bound(Object[] sorted, int from, int to, K key, boolean upper) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            int cmp = ((K) sorted[mid]).compareTo(key);
+            if (cmp < 0 || (upper && cmp == 0)) from = mid + 1;
+            else to = mid;
+        }
+        return from;
+    }
+
+    // Entries [from, to) of a putAll batch, still to be put in the subtree x below parent
+    private final class Part {
+        final Node parent, x; // parent null for the root
+        final int from, to;
+
+        Part(Node parent, Node x, int from, int to) {
+            this.parent = parent;
+            this.x = x;
+            this.from = from;
+            this.to = to;
+        }
     }
 
-    private boolean contains(Node root, K key) {
-        if (root == null) return false;
-        int cmp = root.key.compareTo(key);
-        if (cmp == 0) return true;
-        else if (cmp < 0) return contains(root.right, key);  // go right if root.key < key
-        else return contains(root.left, key);                // go left if root.key > key
+    /**
+     * Puts a batch of entries, in any order; on equal keys the last entry wins
+     * The batch is sorted first. Without balancing it is then put in a single walk, as
+     * in containsAll, and a part of the batch that reaches an empty subtree is linked
+     * there as a perfectly balanced subtree, so a sorted batch no longer turns into a
+     * list. SCAPEGOAT and TREAP restructure the tree around every new node, so there
+     * the sorted entries are put one at a time; consecutive keys then share most of
+     * their path, which stays in cache.
+     */
+    @SuppressWarnings("unchecked")
+    public void putAll(List<? extends Map.Entry<? extends K, ? extends V>> entries) {
+        Object[] sortedKeys = new Object[entries.size()];
+        Object[] sortedValues = new Object[sortedKeys.length];
+        int n = Batches.sortEntries(entries, sortedKeys, sortedValues);
+        if (balancing != Balancing.NONE) {
+            for (int i = 0; i < n; i++) put((K) sortedKeys[i], (V) sortedValues[i]);
+            return;
+        }
+
+        ArrayDeque<Part> parts = new ArrayDeque<>();
+        parts.push(new Part(null, root, 0, n));
+        while (!parts.isEmpty()) {
+            Part part = parts.pop();
+            Node parent = part.parent, x = part.x;
+            int from = part.from, to = part.to;
+            if (x == null) { // link the whole part here
+                Node[] nodes = newNodes(to - from);
+                for (int i = from; i < to; i++) nodes[i - from] = new Node((K) sortedKeys[i], (V) sortedValues[i]);
+                Node built = link(nodes, 0, to - from);
+                if (parent == null) root = built;
+                else if (parent.key.compareTo((K) sortedKeys[from]) < 0) parent.right = built;
+                else parent.left = built;
+                size += to - from;
+                continue;
+            }
+            int lo = bound(sortedKeys, from, to, x.key, false);
+            int hi = bound(sortedKeys, lo, to, x.key, true);
+            if (hi > lo) {
+                x.value = (V) sortedValues[lo];
+                if (cache != null) cache.invalidate(x.key);
+            }
+            if (lo > from) parts.push(new Part(x, x.left, from, lo));
+            if (hi < to) parts.push(new Part(x, x.right, hi, to));
+        }
     }
 
     // Put method
     public void put(K key, V value) {
-        root = put(root, key, value);
+        int top = 0;
+        Node x = root;
+        int cmp = 0;
+        while (x != null) {
+            cmp = x.key.compareTo(key);
+            if (listener != null) listener.onCompare(1);
+            if (cmp == 0) {
+                x.value = value;
+                if (cache != null) cache.invalidate(key);
+                clearPath(top);
+                return;
+            }
+            push(top++, x);
+            x = cmp < 0 ? x.right : x.left;  // go right if x.key < key
+        }
+        Node added = new Node(key, value);
+        if (top == 0) root = added;
+        else if (cmp < 0) path[top - 1].right = added;
+        else path[top - 1].left = added;
+        size++;
+
+        if (balancing == Balancing.SCAPEGOAT) {
+            maxSize = Math.max(maxSize, size);
+            if (top > Math.log(maxSize) / LOG_3_2) rebuildScapegoat(top, added);
+        } else if (balancing == Balancing.TREAP) {
+            added.priority = ThreadLocalRandom.current().nextInt();
+            siftUp(top, added);
+        }
+        clearPath(top);
+    }
+
+    private static final double LOG_3_2 = Math.log(1.5);
+
+    /**
+     * Walks up from the node just added at depth top and rebuilds the lowest ancestor
+     * whose child on the path holds more than 2/3 of its nodes
+     * Such an ancestor exists because the depth exceeds log_{3/2} of the size.
+     */
+    private void rebuildScapegoat(int top, Node added) {
+        Node child = added;
+        int childSize = 1;
+        for (int i = top - 1; i >= 0; i--) {
+            Node parent = path[i];
+            int parentSize = childSize + 1 + count(parent.left == child ? parent.right : parent.left);
+            if (3 * childSize > 2 * parentSize) {
+                Node rebuilt = buildBalanced(parent, parentSize);
+                if (i == 0) root = rebuilt;
+                else if (path[i - 1].left == parent) path[i - 1].left = rebuilt;
+                else path[i - 1].right = rebuilt;
+                return;
+            }
+            child = parent;
+            childSize = parentSize;
+        }
     }
 
-    private Node put(Node root, K key, V value) {
-        if (root == null) return new Node(key, value);
-        int cmp = root.key.compareTo(key);
-        if (cmp == 0) {
-            root.value = value;
-        } else if (cmp < 0) {
-            root.right = put(root.right, key, value);  // go right
-        } else {
-            root.left = put(root.left, key, value);    // go left
+    // Number of nodes in the subtree of x
+    private int count(Node x) {
+        int n = 0;
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        if (x != null) stack.push(x);
+        while (!stack.isEmpty()) {
+            Node y = stack.pop();
+            n++;
+            if (y.left != null) stack.push(y.left);
+            if (y.right != null) stack.push(y.right);
         }
-        return root;
+        return n;
+    }
+
+    // Relinks the n nodes of the subtree of x into a perfectly balanced subtree
+    private Node buildBalanced(Node x, int n) {
+        Node[] nodes = newNodes(n);
+        int i = 0;
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        while (x != null || !stack.isEmpty()) { // in-order walk
+            while (x != null) {
+                stack.push(x);
+                x = x.left;
+            }
+            x = stack.pop();
+            nodes[i++] = x;
+            x = x.right;
+        }
+        return link(nodes, 0, n);
+    }
+
+    private Node link(Node[] nodes, int from, int to) {
+        if (from >= to) return null;
+        int mid = (from + to) >>> 1;
+        Node x = nodes[mid];
+        x.left = link(nodes, from, mid);
+        x.right = link(nodes, mid + 1, to);
+        return x;
+    }
+
+    // Rotates the node just added at depth top up while its priority beats its parent's
+    private void siftUp(int top, Node x) {
+        while (top > 0 && path[top - 1].priority < x.priority) {
+            Node p = path[--top];
+            Node lifted = p.left == x ? rotateRight(p) : rotateLeft(p);
+            replaceChild(top == 0 ? null : path[top - 1], p, lifted);
+        }
+    }
+
+    private Node rotateLeft(Node x) {
+        if (listener != null) listener.onRotateLeft();
+        Node y = x.right;
+        x.right = y.left;
+        y.left = x;
+        return y;
+    }
+
+    private Node rotateRight(Node x) {
+        if (listener != null) listener.onRotateRight();
+        Node y = x.left;
+        x.left = y.right;
+        y.right = x;
+        return y;
+    }
+
+    // Makes y take the place of x below parent (the root when parent is null)
+    private void replaceChild(Node parent, Node x, Node y) {
+        if (parent == null) root = y;
+        else if (parent.left == x) parent.left = y;
+        else parent.right = y;
     }
 
     // Find minimum key
@@ -132,34 +498,114 @@ public class G_BST<K extends Comparable<K>, V> {
 
     // Delete method
     public void delete(K key) {
-        root = delete(root, key);
-    }
-
+        Node parent = null;
+        Node x = root;
+        while (x != null) {
+            int cmp = x.key.compareTo(key);
+            if (listener != null) listener.onCompare(1);
+            if (cmp == 0) break;
+            parent = x;
+            x = cmp > 0 ? x.left : x.right;
+        }
+        if (x == null) return;
+        if (cache != null) cache.invalidate(key);
+
+        if (balancing == Balancing.TREAP) {
+            // rotate x down below its higher priority child until it has at most one child
+            while (x.left != null && x.right != null) {
+                Node lifted = x.left.priority > x.right.priority ? rotateRight(x) : rotateLeft(x);
+                replaceChild(parent, x, lifted);
+                parent = lifted;
+            }
+        } else if (x.left != null && x.right != null) {
+            // Node with two children: replace with predecessor, which has no right child
+            Node predParent = x;
+            Node pred = x.left;
+            while (pred.right != null) {
+                predParent = pred;
+                pred = pred.right;
+            }
+            x.key = pred.key;
+            x.value = pred.value;
+            parent = predParent;
+            x = pred;
+        }
+        replaceChild(parent, x, x.left != null ? x.left : x.right);
+        size--;
 
-    private Node delete(Node root, K key) {
-        if (root == null) return null;
+        if (balancing == Balancing.SCAPEGOAT && 3 * size < 2 * maxSize) {
+            root = buildBalanced(root, size);
+            maxSize = size;
+        }
+    }
 
-        int cmp = root.key.compareTo(key);
+    /**
+     * Rebalances the whole tree in place with the Day-Stout-Warren algorithm
+     * The tree is first straightened into a right leaning list by right rotations, then
+     * folded back by rounds of left rotations into a tree of minimal height. O(n) time,
+     * O(1) extra space.
+     */
+    public void rebalance() {
+        Node pseudo = new Node(null, null);
+        pseudo.right = root;
+        treeToVine(pseudo);
+        int leaves = size + 1 - Integer.highestOneBit(size + 1); // nodes below the last full level
+        compress(pseudo, leaves);
+        for (int m = size - leaves; m > 1; m /= 2) compress(pseudo, m / 2);
+        root = pseudo.right;
+
+        rebuilt();
+    }
 
-        if (cmp > 0) {
-            root.left = delete(root.left, key);
-        } else if (cmp < 0) {
-            root.right = delete(root.right, key);
-        } else {
-            // Found node to delete
-            if (root.left == null) return root.right;
-            if (root.right == null) return root.left;
+    // Resets the balancing state after the whole tree was rebuilt into a balanced shape
+    private void rebuilt() {
+        if (balancing == Balancing.SCAPEGOAT) {
+            maxSize = size;
+        } else if (balancing == Balancing.TREAP) {
+            // fresh random priorities, the largest ones on the upper levels to restore heap order
+            int[] priorities = ThreadLocalRandom.current().ints(size).sorted().toArray();
+            int i = size;
+            ArrayDeque<Node> level = new ArrayDeque<>();
+            if (root != null) level.add(root);
+            while (!level.isEmpty()) {
+                Node x = level.poll();
+                x.priority = priorities[--i];
+                if (x.left != null) level.add(x.left);
+                if (x.right != null) level.add(x.right);
+            }
+        }
+    }
 
-            // Node with two children: replace with predecessor
-            Node predecessor = predecessor(root,root.key);
+    // Turns the tree below pseudo.right into a list linked through right pointers
+    private void treeToVine(Node pseudo) {
+        Node tail = pseudo;
+        Node rest = tail.right;
+        while (rest != null) {
+            if (rest.left == null) {
+                tail = rest;
+                rest = rest.right;
+            } else {
+                Node lifted = rest.left;
+                rest.left = lifted.right;
+                lifted.right = rest;
+                rest = lifted;
+                tail.right = lifted;
+            }
+        }
+    }
 
-            root.key = predecessor.key;
-            root.value=predecessor.value;
-            
-            root.left = delete(root.left, predecessor.key);
+    // count left rotations along the right spine below pseudo, every other node goes down
+    private void compress(Node pseudo, int count) {
+        Node scanner = pseudo;
+        for (int i = 0; i < count; i++) {
+            Node child = scanner.right;
+            scanner.right = child.right;
+            scanner = scanner.right;
+            child.right = scanner.left;
+            scanner.left = child;
         }
-        return root;
     }
+
     public static void main(String[] args) {
         G_BST<Integer, String> bst = new G_BST<>();
 
@@ -207,39 +653,60 @@ public class G_BST<K extends Comparable<K>, V> {
         bst.delete(5);
         System.out.print("Inorder traversal after deleting 5: ");
         bst.inorder();
+
+        // Sum queries over two cursors
+        System.out.println("Pair summing to 11: " + bst.pairWithSum(11, Integer::longValue));
+        System.out.println("Three keys summing to 17: " + bst.kSum(3, 17, Integer::longValue));
+        System.out.println("Pairs summing to 10..13: " + bst.countPairsInRange(10, 13, Integer::longValue));
+
+        // Sorted inserts under every balancing strategy
+        for (Balancing balancing : Balancing.values()) {
+            G_BST<Integer, Integer> ids = new G_BST<>(balancing);
+            for (int i = 0; i < 10_000; i++) ids.put(i, i);
+            System.out.print(balancing + ": height " + ids.height() + " after 10000 sorted puts");
+            ids.rebalance();
+            System.out.println(", " + ids.height() + " after rebalance()");
+        }
     }
 
     public int height(){
-        return height(root);
-    }
-    private int height(Node root){
-        if(root==null) return 0;
-        return 1+Math.max(height(root.left),height(root.right));
+        // level by level, so a degenerate tree does not overflow the stack
+        int h = 0;
+        ArrayDeque<Node> level = new ArrayDeque<>();
+        if (root != null) level.add(root);
+        while (!level.isEmpty()) {
+            h++;
+            for (int i = level.size(); i > 0; i--) {
+                Node x = level.poll();
+                if (x.left != null) level.add(x.left);
+                if (x.right != null) level.add(x.right);
+            }
+        }
+        return h;
     }
 
     public boolean isBST(){
-        return isBST(root,null,null);
-    }
-    private boolean isBST(Node root,K min,K max){
-        if(root==null) return true;
-
-        if(( min!=null && root.key.compareTo(min)<=0  )||
-            (max!=null && root.key.compareTo(max)>0)){
-            return false;
-        }
-        return isBST(root.left,min,root.key) && isBST(root.right,root.key,max);
+        return diagnose(false).valid;
     }
 
+    // O(n): the heights come from the same post-order pass, see TreeDiagnostics
     public boolean isPerfectlyBalanced(){
-        return isPerfectlyBalanced(root);
-    }
-    private int balanceFactor(Node x){
-        return height(x.left)-height(x.right);
+        return diagnose(false).balanced;
     }
-    private boolean isPerfectlyBalanced(Node root){
-        if(root==null) return true;
-        if(Math.abs(balanceFactor(root))>1) return false;
-        return isPerfectlyBalanced(root.left) && isPerfectlyBalanced(root.right);
+
+    /**
+     * Height, order, balance (sibling heights within 1), size and depth histogram in one pass
+     * @param parallel - walk the subtrees below the top levels as fork-join tasks
+     */
+    public TreeDiagnostics.Report diagnose(boolean parallel) {
+        return TreeDiagnostics.run(new TreeDiagnostics.Adapter<Node>() {
+            public Node root() { return root; }
+            public int keys(Node node) { return 1; }
+            public int children(Node node) { return 2; }
+            public Node child(Node node, int i) { return i == 0 ? node.left : node.right; }
+            public int compare(Node a, int i, Node b, int j) { return a.key.compareTo(b.key); }
+            public int maxHeightSkew() { return 1; }
+        }, parallel);
     }
     public Node searchClosest(K key){
         return searchClosest(root,key);
@@ -259,26 +726,251 @@ public class G_BST<K extends Comparable<K>, V> {
         }
         return closest;
     }
-    private void inorderKeys(Node root, List<Integer> keys) {
-        if (root == null) return;
-        inorderKeys(root.left, keys);
-        keys.add((Integer) root.key);  // Cast safely assuming keys are Integer
-        inorderKeys(root.right, keys);
+
+    // Read-only copy laid out for fast lookups, see FrozenMap
+    public FrozenMap<K, V> freeze() {
+        return freeze(null);
     }
-    public boolean checkExistTwoNodesWithSum(int s) {
-        List<Integer> keys=new ArrayList<>();
-        inorderKeys(root,keys);
-        int left=0,right=keys.size()-1;
 
-        while(left<right){
-            int sum=keys.get(left)+keys.get(right);
-            if(sum==s) return true;
-            else if (sum<s) left++;
-            else right--;
+    /**
+     * Read-only copy that searches on toLong of the keys, see FrozenMap
+     * @param toLong - strictly increasing in key order, e.g. Integer::longValue
+     */
+    public FrozenMap<K, V> freeze(ToLongFunction<? super K> toLong) {
+        Object[] keys = new Object[size];
+        Object[] values = new Object[size];
+        int i = 0;
+        for (Cursor c = ascending(); c.hasNext(); i++) {
+            Node x = c.nextNode();
+            keys[i] = x.key;
+            values[i] = x.value;
         }
-        return false;
+        return FrozenMap.<K, V>fromSorted(keys, values, i, toLong);
+    }
+
+    /**
+     * Writes the entries to file in the TreeSnapshot format, streaming them from the tree
+     */
+    public void save(Path file, TreeSnapshot.Codec<K> keys, TreeSnapshot.Codec<V> values) throws IOException {
+        TreeSnapshot.write(file, keys, values, action -> {
+            for (Cursor c = ascending(); c.hasNext(); ) {
+                Node x = c.nextNode();
+                action.accept(x.key, x.value);
+            }
+        });
+    }
+
+    // Tree read from a snapshot written by save, built perfectly balanced in linear time
+    @SuppressWarnings("unchecked")
+    public static <K extends Comparable<K>, V> G_BST<K, V> load(Path file, TreeSnapshot.Codec<K> keys,
+                                                                TreeSnapshot.Codec<V> values, Balancing balancing) throws IOException {
+        TreeSnapshot.Entries e = TreeSnapshot.read(file, keys, values);
+        G_BST<K, V> tree = new G_BST<>(balancing);
+        G_BST<K, V>.Node[] nodes = tree.newNodes(e.count);
+        for (int i = 0; i < e.count; i++) nodes[i] = tree.new Node((K) e.keys[i], (V) e.values[i]);
+        tree.root = tree.link(nodes, 0, e.count);
+        tree.size = e.count;
+        tree.rebuilt();
+        return tree;
     }
 
+    // ---- cursors and sum queries ----
+
+    /**
+     * In-order cursor over the keys, ascending or descending, holding only the
+     * O(height) stack of nodes whose key is still to come
+     */
+    public class Cursor implements Iterator<K> {
+        private final ArrayDeque<Node> stack = new ArrayDeque<>();
+        private final boolean descending;
+
+        // Positions the cursor on the first key after bound in its direction, on the first key if bound is null
+        private Cursor(boolean descending, K bound) {
+            this.descending = descending;
+            Node x = root;
+            while (x != null) {
+                int cmp = bound == null ? (descending ? -1 : 1) : x.key.compareTo(bound);
+                if (descending ? cmp < 0 : cmp > 0) {
+                    stack.push(x);
+                    x = descending ? x.right : x.left;
+                } else {
+                    x = descending ? x.left : x.right;
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        // Key next() will return, without moving
+        public K peek() {
+            if (stack.isEmpty()) throw new NoSuchElementException();
+            return stack.peek().key;
+        }
 
+        public K next() {
+            return nextNode().key;
+        }
 
+        private Node nextNode() {
+            if (stack.isEmpty()) throw new NoSuchElementException();
+            Node x = stack.pop();
+            for (Node y = descending ? x.left : x.right; y != null; y = descending ? y.right : y.left) {
+                stack.push(y);
+            }
+            return x;
+        }
+    }
+
+    // Cursor over all keys in increasing order
+    public Cursor ascending() {
+        return new Cursor(false, null);
+    }
+
+    // Cursor over all keys in decreasing order
+    public Cursor descending() {
+        return new Cursor(true, null);
+    }
+
+    // Cursor over the keys greater than after, in increasing order
+    public Cursor ascendingAfter(K after) {
+        return new Cursor(false, after);
+    }
+
+    /*
+     * The sum queries below look at keys through a key-to-long extractor, which must be
+     * non-decreasing in key order (Integer::longValue for Integer keys, for instance).
+     * They run two cursors towards each other, so they use O(height) memory whatever the
+     * size of the tree. Pairs are made of two distinct keys.
+     */
+
+    // Whether two distinct keys have toLong values adding up to target
+    public boolean hasPairWithSum(long target, ToLongFunction<? super K> toLong) {
+        return pairWithSum(target, toLong) != null;
+    }
+
+    // Two keys whose toLong values add up to target, or null if there are none
+    public List<K> pairWithSum(long target, ToLongFunction<? super K> toLong) {
+        return twoSum(ascending(), size, target, toLong);
+    }
+
+    // Two-pointer search over the last count keys, lo being positioned on the first of them
+    private List<K> twoSum(Cursor lo, int count, long target, ToLongFunction<? super K> toLong) {
+        if (count < 2) return null;
+        Cursor hi = descending();
+        int i = 0, j = count - 1;
+        K a = lo.next(), b = hi.next();
+        while (i < j) {
+            long sum = toLong.applyAsLong(a) + toLong.applyAsLong(b);
+            if (sum == target) return List.of(a, b);
+            if (sum < target) {
+                a = lo.next();
+                i++;
+            } else {
+                b = hi.next();
+                j--;
+            }
+        }
+        return null;
+    }
+
+    // Two keys whose toLong values add up closest to target, or null if there are fewer than two keys
+    public List<K> closestPair(long target, ToLongFunction<? super K> toLong) {
+        if (size < 2) return null;
+        Cursor lo = ascending(), hi = descending();
+        int i = 0, j = size - 1;
+        K a = lo.next(), b = hi.next();
+        K bestA = a, bestB = b;
+        long bestDistance = Long.MAX_VALUE;
+        while (i < j) {
+            long sum = toLong.applyAsLong(a) + toLong.applyAsLong(b);
+            long distance = Math.abs(sum - target);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                bestA = a;
+                bestB = b;
+                if (distance == 0) break;
+            }
+            if (sum < target) {
+                a = lo.next();
+                i++;
+            } else {
+                b = hi.next();
+                j--;
+            }
+        }
+        return List.of(bestA, bestB);
+    }
+
+    // Number of pairs of distinct keys whose toLong values add up to a value in [lo, hi]
+    public long countPairsInRange(long lo, long hi, ToLongFunction<? super K> toLong) {
+        if (lo > hi) return 0;
+        return countPairsAtMost(hi, toLong) - (lo == Long.MIN_VALUE ? 0 : countPairsAtMost(lo - 1, toLong));
+    }
+
+    // Pairs with sum <= bound: when a + b fits, so does a with every key between a and b
+    private long countPairsAtMost(long bound, ToLongFunction<? super K> toLong) {
+        if (size < 2) return 0;
+        Cursor lo = ascending(), hi = descending();
+        int i = 0, j = size - 1;
+        K a = lo.next(), b = hi.next();
+        long count = 0;
+        while (i < j) {
+            if (toLong.applyAsLong(a) + toLong.applyAsLong(b) <= bound) {
+                count += j - i;
+                a = lo.next();
+                i++;
+            } else {
+                b = hi.next();
+                j--;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * k distinct keys whose toLong values add up to target, in increasing order, or null
+     * The first k - 2 keys are enumerated with cursors and the last two are found with the
+     * two-pointer search, O(n^(k-1)) time and O(k * height) memory.
+     */
+    public List<K> kSum(int k, long target, ToLongFunction<? super K> toLong) {
+        if (k < 1) throw new IllegalArgumentException("k must be positive: " + k);
+        List<K> chosen = new ArrayList<>(k);
+        return kSum(k, target, null, size, toLong, chosen) ? chosen : null;
+    }
+
+    // Looks for k keys among the count keys greater than after (all keys if after is null)
+    private boolean kSum(int k, long target, K after, int count, ToLongFunction<? super K> toLong, List<K> chosen) {
+        if (count < k) return false;
+        Cursor c = after == null ? ascending() : ascendingAfter(after);
+        if (k == 1) {
+            while (c.hasNext()) {
+                K x = c.next();
+                if (toLong.applyAsLong(x) == target) {
+                    chosen.add(x);
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (k == 2) {
+            List<K> pair = twoSum(c, count, target, toLong);
+            if (pair == null) return false;
+            chosen.addAll(pair);
+            return true;
+        }
+        for (int i = 0; count - i - 1 >= k - 1; i++) {
+            K x = c.next();
+            chosen.add(x);
+            if (kSum(k - 1, target - toLong.applyAsLong(x), x, count - i - 1, toLong, chosen)) return true;
+            chosen.remove(chosen.size() - 1);
+        }
+        return false;
+    }
+
+    // Whether two distinct keys add up to s, keys read through toLong as in hasPairWithSum
+    public boolean checkExistTwoNodesWithSum(int s, ToLongFunction<? super K> toLong) {
+        return hasPairWithSum(s, toLong);
+    }
 }
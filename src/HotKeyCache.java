@@ -0,0 +1,340 @@
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Bounded cache of the values of frequently read keys, put in front of the lookups of
+ * a tree (see G_AVL.setCache and G_BST.setCache)
+ *
+ * Keys are spread over stripes by hash, each with its own StampedLock, entries and
+ * eviction state. Lookups take only their stripe's read lock, so readers never wait
+ * for each other; filling the cache after a miss and invalidating take the write lock
+ * of one stripe.
+ *
+ * A full stripe picks the entry to evict with CLOCK: a hit sets the entry's reference
+ * bit, and a hand sweeping the slots clears the bits it finds set and stops at the
+ * first entry without one, so an entry hit since the hand last passed survives. With
+ * Eviction.TINY_LFU a new key is also admitted only if it was looked up more often
+ * than the victim, according to a count-min sketch of recent lookups (TinyLFU), so a
+ * scan over keys read once cannot push the hot keys out.
+ *
+ * Only present keys with non-null values are cached. The tree invalidates a key when
+ * its value changes or it is removed, and clears the cache after operations that
+ * change many keys at once. The tree itself is not thread-safe: readers may share it
+ * and the cache, but a write must not run at the same time as anything else.
+ */
+public class HotKeyCache<K, V> {
+
+    /**
+     * Which entries the cache keeps once full
+     * CLOCK    - the victim is the next entry not hit since the hand last passed it,
+     *            new keys are always admitted
+     * TINY_LFU - same victim, but a new key only replaces it if its estimated frequency
+     *            is higher
+     */
+    public enum Eviction { CLOCK, TINY_LFU }
+
+    static final int MIN_STRIPE_CAPACITY = 16;
+
+    private final class Stripe {
+        final StampedLock lock = new StampedLock();
+        final HashMap<K, Integer> slots = new HashMap<>(); // key -> its slot
+        final K[] keys;
+        final Object[] values;
+        final boolean[] referenced; // CLOCK bits, set by readers under the read lock
+        final int[] free;           // slots emptied by invalidate, reused first
+        int freeCount;
+        int used; // slots [0, used) have held an entry since the last clear
+        int hand;
+        final FrequencySketch sketch; // TINY_LFU only
+
+        @SuppressWarnings("unchecked")
+        Stripe(int capacity, Eviction eviction) {
+            keys = (K[]) new Object[capacity];
+            values = new Object[capacity];
+            referenced = new boolean[capacity];
+            free = new int[capacity];
+            sketch = eviction == Eviction.TINY_LFU ? new FrequencySketch(capacity) : null;
+        }
+
+        // Slot of the next entry without its reference bit; every slot is in use
+        int victim() {
+            while (referenced[hand]) {
+                referenced[hand] = false;
+                hand = (hand + 1) % keys.length;
+            }
+            int v = hand;
+            hand = (hand + 1) % keys.length;
+            return v;
+        }
+
+        void empty(int slot) {
+            keys[slot] = null;
+            values[slot] = null;
+            referenced[slot] = false;
+        }
+    }
+
+    private final Stripe[] stripes;
+    private final int capacity;
+    private final Eviction eviction;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * @param capacity - largest number of entries, split evenly between the stripes
+     * @param eviction - CLOCK, or CLOCK with TinyLFU admission
+     * @param stripes - number of independently locked parts, rounded down to a power of two
+     */
+    public HotKeyCache(int capacity, Eviction eviction, int stripes) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        if (stripes < 1) throw new IllegalArgumentException("need at least one stripe: " + stripes);
+        stripes = Integer.highestOneBit(Math.min(stripes, capacity));
+        int perStripe = (capacity + stripes - 1) / stripes;
+        @SuppressWarnings("unchecked")
+        Stripe[] s = (Stripe[]) Array.newInstance(Stripe.class, stripes);
+        for (int i = 0; i < stripes; i++) s[i] = new Stripe(perStripe, eviction);
+        this.stripes = s;
+        this.capacity = perStripe * stripes;
+        this.eviction = eviction;
+    }
+
+    // Four stripes per processor, as long as each keeps MIN_STRIPE_CAPACITY entries
+    public HotKeyCache(int capacity, Eviction eviction) {
+        this(capacity, eviction, Math.max(1, Math.min(4 * Runtime.getRuntime().availableProcessors(),
+                capacity / MIN_STRIPE_CAPACITY)));
+    }
+
+    public HotKeyCache(int capacity) {
+        this(capacity, Eviction.TINY_LFU);
+    }
+
+    // Spreads the high bits of the hash down, as HashMap does
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private Stripe stripe(int h) {
+        return stripes[h & (stripes.length - 1)];
+    }
+
+    /**
+     * Cached value of key, or null on a miss, after which the caller looks the key up
+     * in the tree and hands the value to fill
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        int h = spread(key.hashCode());
+        Stripe s = stripe(h);
+        if (s.sketch != null) s.sketch.increment(h);
+        long stamp = s.lock.readLock();
+        try {
+            Integer slot = s.slots.get(key);
+            if (slot != null) {
+                s.referenced[slot] = true;
+                hits.increment();
+                return (V) s.values[slot];
+            }
+        } finally {
+            s.lock.unlockRead(stamp);
+        }
+        misses.increment();
+        return null;
+    }
+
+    // Caches the value a lookup that missed found in the tree; null values are not cached
+    public void fill(K key, V value) {
+        if (value == null) return;
+        int h = spread(key.hashCode());
+        Stripe s = stripe(h);
+        long stamp = s.lock.writeLock();
+        try {
+            Integer present = s.slots.get(key);
+            if (present != null) { // filled by another reader in the meantime
+                s.values[present] = value;
+                return;
+            }
+            int slot;
+            if (s.freeCount > 0) {
+                slot = s.free[--s.freeCount];
+            } else if (s.used < s.keys.length) {
+                slot = s.used++;
+            } else {
+                slot = s.victim();
+                K victim = s.keys[slot];
+                if (s.sketch != null && s.sketch.frequency(h) <= s.sketch.frequency(spread(victim.hashCode()))) {
+                    rejections.increment();
+                    return;
+                }
+                s.slots.remove(victim);
+                evictions.increment();
+            }
+            s.keys[slot] = key;
+            s.values[slot] = value;
+            s.referenced[slot] = false;
+            s.slots.put(key, slot);
+        } finally {
+            s.lock.unlockWrite(stamp);
+        }
+    }
+
+    // Drops the entry of key, if cached
+    public void invalidate(K key) {
+        Stripe s = stripe(spread(key.hashCode()));
+        long stamp = s.lock.writeLock();
+        try {
+            Integer slot = s.slots.remove(key);
+            if (slot != null) {
+                s.empty(slot);
+                s.free[s.freeCount++] = slot;
+            }
+        } finally {
+            s.lock.unlockWrite(stamp);
+        }
+    }
+
+    // Drops every entry; the counters and the frequency estimates are kept
+    public void clear() {
+        for (Stripe s : stripes) {
+            long stamp = s.lock.writeLock();
+            try {
+                s.slots.clear();
+                Arrays.fill(s.keys, 0, s.used, null);
+                Arrays.fill(s.values, 0, s.used, null);
+                Arrays.fill(s.referenced, 0, s.used, false);
+                s.used = 0;
+                s.freeCount = 0;
+                s.hand = 0;
+            } finally {
+                s.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    public int size() {
+        int n = 0;
+        for (Stripe s : stripes) {
+            long stamp = s.lock.readLock();
+            try {
+                n += s.slots.size();
+            } finally {
+                s.lock.unlockRead(stamp);
+            }
+        }
+        return n;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public Eviction eviction() {
+        return eviction;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    // Entries dropped to make room for another key
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    // TINY_LFU: keys not cached after a miss because the victim was used more often
+    public long rejections() {
+        return rejections.sum();
+    }
+
+    public double hitRate() {
+        long h = hits(), m = misses();
+        return h + m == 0 ? 0 : (double) h / (h + m);
+    }
+
+    public void resetCounters() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        rejections.reset();
+    }
+
+    public String toString() {
+        return String.format("%s cache %d/%d: %d hits, %d misses (%.1f%% hit rate), %d evictions, %d rejections",
+                eviction, size(), capacity, hits(), misses(), 100 * hitRate(), evictions(), rejections());
+    }
+
+    /**
+     * Count-min sketch of how often keys were looked up, 4 bit counters in 4 rows
+     * A key's estimate is the smallest of its 4 counters. Once the number of increments
+     * reaches 10 times the capacity, all counters are halved, so the estimates follow
+     * the recent popularity of keys rather than their whole history. Readers update it
+     * without a lock: increments lost to a race only make the estimates a bit lower.
+     */
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+        private static final int MAX = 15;
+
+        private final byte[] counters;
+        private final int shift; // 32 - log2(counters per row)
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int row = Math.max(16, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1); // power of two >= capacity
+            counters = new byte[SEEDS.length * row];
+            shift = 32 - Integer.numberOfTrailingZeros(row);
+            sampleSize = 10 * capacity;
+        }
+
+        private int index(int h, int row) {
+            return (row << (32 - shift)) + ((h * SEEDS[row]) >>> shift);
+        }
+
+        int frequency(int h) {
+            int min = MAX;
+            for (int r = 0; r < SEEDS.length; r++) min = Math.min(min, counters[index(h, r)]);
+            return min;
+        }
+
+        void increment(int h) {
+            boolean added = false;
+            for (int r = 0; r < SEEDS.length; r++) {
+                int i = index(h, r);
+                if (counters[i] < MAX) {
+                    counters[i]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) age();
+        }
+
+        private void age() {
+            for (int i = 0; i < counters.length; i++) counters[i] >>= 1;
+            additions /= 2;
+        }
+    }
+
+    public static void main(String[] args) {
+        // hot keys 0..99 get most lookups, interleaved with a scan over keys read once
+        for (Eviction eviction : Eviction.values()) {
+            HotKeyCache<Integer, String> cache = new HotKeyCache<>(100, eviction, 4);
+            int scan = 1000;
+            for (int round = 0; round < 50; round++) {
+                for (int k = 0; k < 100; k++) {
+                    if (cache.get(k) == null) cache.fill(k, "v" + k);
+                    if (cache.get(scan) == null) cache.fill(scan, "v" + scan);
+                    scan++;
+                }
+            }
+            System.out.println(cache);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Lookup throughput of G_AVL and G_BST with no cache, a CLOCK HotKeyCache and a
+ * TinyLFU HotKeyCache in front, on skewed traffic, for 1 to 16 threads
+ *
+ * HOT_SHARE of the operations go to HOT_FRACTION of the keys, the rest to keys drawn
+ * uniformly from the key space, which is pre-filled in random order. Gets share a read
+ * lock and puts take the write lock, as in Main; the cache holds 2% of the keys.
+ *
+ * Usage: java HotKeyCacheBenchmark [seconds per run] [put percentage] [key space]
+ */
+public class HotKeyCacheBenchmark {
+    static final double HOT_FRACTION = 0.01;
+    static final double HOT_SHARE = 0.8;
+
+    interface IntMap {
+        void put(int key);
+        boolean get(int key);
+    }
+
+    static IntMap avl(HotKeyCache<Integer, Integer> cache) {
+        G_AVL<Integer, Integer> map = new G_AVL<>();
+        map.setCache(cache);
+        return locked(new IntMap() {
+            public void put(int key) { map.put(key, key); }
+            public boolean get(int key) { return map.get(key) != null; }
+        });
+    }
+
+    static IntMap bst(G_BST.Balancing balancing, HotKeyCache<Integer, Integer> cache) {
+        G_BST<Integer, Integer> map = new G_BST<>(balancing);
+        map.setCache(cache);
+        return locked(new IntMap() {
+            public void put(int key) { map.put(key, key); }
+            public boolean get(int key) { return map.get(key) != null; }
+        });
+    }
+
+    static IntMap locked(IntMap map) {
+        ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        return new IntMap() {
+            public void put(int key) {
+                lock.writeLock().lock();
+                try {
+                    map.put(key);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+
+            public boolean get(int key) {
+                lock.readLock().lock();
+                try {
+                    return map.get(key);
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+        };
+    }
+
+    static HotKeyCache<Integer, Integer> cache(HotKeyCache.Eviction eviction, int keySpace) {
+        return eviction == null ? null : new HotKeyCache<>(Math.max(1, keySpace / 50), eviction);
+    }
+
+    // A hot key, spread over the key space, with probability HOT_SHARE, any key otherwise
+    static int nextKey(ThreadLocalRandom rnd, int keySpace) {
+        int hot = Math.max(1, (int) (keySpace * HOT_FRACTION));
+        if (rnd.nextDouble() < HOT_SHARE) return (int) ((long) rnd.nextInt(hot) * keySpace / hot);
+        return rnd.nextInt(keySpace);
+    }
+
+    static double run(IntMap map, int threads, int seconds, int putPercent, int keySpace) throws InterruptedException {
+        int[] keys = new int[keySpace];
+        for (int i = 0; i < keySpace; i++) keys[i] = i;
+        ThreadLocalRandom fill = ThreadLocalRandom.current();
+        for (int i = keySpace - 1; i > 0; i--) { // random order, G_BST without balancing stays shallow
+            int j = fill.nextInt(i + 1);
+            int t = keys[i];
+            keys[i] = keys[j];
+            keys[j] = t;
+        }
+        for (int key : keys) map.put(key);
+        return Throughput.run(threads, seconds, rnd -> {
+            int key = nextKey(rnd, keySpace);
+            if (rnd.nextInt(100) < putPercent) map.put(key);
+            else map.get(key);
+        });
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int putPercent = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int keySpace = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+        HotKeyCache.Eviction[] evictions = {null, HotKeyCache.Eviction.CLOCK, HotKeyCache.Eviction.TINY_LFU};
+
+        System.out.println("put%=" + putPercent + " keys=" + keySpace + " (ops/s, hit rate)");
+        System.out.printf("%-16s %8s %16s %24s %24s%n", "tree", "threads", "no cache", "CLOCK", "TINY_LFU");
+        String[] trees = {"G_AVL", "G_BST NONE", "G_BST TREAP"};
+        for (String tree : trees) {
+            for (int threads = 1; threads <= 16; threads *= 2) {
+                StringBuilder line = new StringBuilder(String.format("%-16s %8d", tree, threads));
+                for (HotKeyCache.Eviction eviction : evictions) {
+                    HotKeyCache<Integer, Integer> cache = cache(eviction, keySpace);
+                    IntMap map = tree.equals("G_AVL") ? avl(cache)
+                            : bst(tree.endsWith("NONE") ? G_BST.Balancing.NONE : G_BST.Balancing.TREAP, cache);
+                    double rate = run(map, threads, seconds, putPercent, keySpace);
+                    if (cache == null) line.append(String.format(" %16.0f", rate));
+                    else line.append(String.format(" %16.0f (%4.1f%%)", rate, 100 * cache.hitRate()));
+                }
+                System.out.println(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * Comparison function on primitive ints, used by IntAVL and IntIntAVL instead of a
+ * boxing Comparator<Integer>
+ */
+@FunctionalInterface
+public interface IntComparator {
+    int compare(int a, int b);
+}
@@ -0,0 +1,183 @@
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * AVL map from primitive int keys to primitive int values
+ *
+ * Same structure as G_AVL, but keys and values are int fields of the node, so nothing
+ * is boxed and comparisons are inlined instead of going through Comparable.compareTo.
+ * A caller-supplied IntComparator can replace the natural order.
+ */
+public class IntIntAVL {
+    private class Node {
+        int key;
+        int value;
+        Node left, right;
+        int height;
+
+        Node(int key, int value) {
+            this.key = key;
+            this.value = value;
+            this.height = 0;
+        }
+
+        public String toString() {
+            return "(" + key + ", " + value + ")";
+        }
+    }
+
+    private Node root;
+    private final IntComparator comparator; // null for natural int order
+
+    public IntIntAVL() {
+        this(null);
+    }
+
+    public IntIntAVL(IntComparator comparator) {
+        this.comparator = comparator;
+    }
+
+    private int compare(int a, int b) {
+        return comparator == null ? Integer.compare(a, b) : comparator.compare(a, b);
+    }
+
+    private int height(Node node) {
+        return node == null ? -1 : node.height;
+    }
+
+    private int balanceFactor(Node node) {
+        return height(node.left) - height(node.right);
+    }
+
+    private Node rotateLeft(Node x) {
+        Node y = x.right;
+        x.right = y.left;
+        y.left = x;
+
+        x.height = 1 + Math.max(height(x.left), height(x.right));
+        y.height = 1 + Math.max(height(y.left), height(y.right));
+        return y;
+    }
+
+    private Node rotateRight(Node x) {
+        Node y = x.left;
+        x.left = y.right;
+        y.right = x;
+
+        x.height = 1 + Math.max(height(x.left), height(x.right));
+        y.height = 1 + Math.max(height(y.left), height(y.right));
+        return y;
+    }
+
+    // Balances the tree by performing rotations
+    private Node balance(Node root) {
+        if (root == null) return null;
+
+        root.height = 1 + Math.max(height(root.left), height(root.right));
+        int bf = balanceFactor(root);
+
+        // Left heavy
+        if (bf > 1) {
+            if (balanceFactor(root.left) < 0) {
+                root.left = rotateLeft(root.left);  // Left-Right case
+            }
+            root = rotateRight(root);  // Left-Left case
+        }
+        // Right heavy
+        else if (bf < -1) {
+            if (balanceFactor(root.right) > 0) {
+                root.right = rotateRight(root.right);  // Right-Left case
+            }
+            root = rotateLeft(root);  // Right-Right case
+        }
+
+        return root;
+    }
+
+    // Put (insert or update)
+    public void put(int key, int value) {
+        root = put(root, key, value);
+    }
+
+    private Node put(Node root, int key, int value) {
+        if (root == null) return new Node(key, value);
+        int cmp = compare(key, root.key);
+
+        if (cmp < 0) {
+            root.left = put(root.left, key, value);
+        } else if (cmp > 0) {
+            root.right = put(root.right, key, value);
+        } else {
+            root.value = value;
+            return root;
+        }
+
+        return balance(root);
+    }
+
+    // Get, missing if the key is absent
+    public int getOrDefault(int key, int missing) {
+        Node n = find(key);
+        return n == null ? missing : n.value;
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) != null;
+    }
+
+    private Node find(int key) {
+        Node cur = root;
+        while (cur != null) {
+            int cmp = compare(key, cur.key);
+            if (cmp < 0) cur = cur.left;
+            else if (cmp > 0) cur = cur.right;
+            else return cur;
+        }
+        return null;
+    }
+
+    // Remove
+    public void remove(int key) {
+        root = remove(root, key);
+    }
+
+    private Node remove(Node root, int key) {
+        if (root == null) return null;
+        int cmp = compare(key, root.key);
+
+        if (cmp < 0) {
+            root.left = remove(root.left, key);
+        } else if (cmp > 0) {
+            root.right = remove(root.right, key);
+        } else {
+            if (root.left == null) return root.right;
+            if (root.right == null) return root.left;
+
+            Node pred = findMax(root.left);  // In-order predecessor
+            root.key = pred.key;
+            root.value = pred.value;
+            root.left = remove(root.left, pred.key);
+        }
+
+        return balance(root);
+    }
+
+    private Node findMax(Node root) {
+        while (root.right != null) root = root.right;
+        return root;
+    }
+
+    // Display tree level by level (BFS)
+    public void displayLevels() {
+        if (root == null) return;
+        Queue<Node> q = new LinkedList<>();
+        q.add(root);
+        while (!q.isEmpty()) {
+            Node cur = q.poll();
+            System.out.print(cur + " ");
+            if (cur.left != null) q.add(cur.left);
+            if (cur.right != null) q.add(cur.right);
+        }
+        System.out.println();
+    }
+}
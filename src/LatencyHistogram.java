@@ -0,0 +1,106 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets, as HdrHistogram
+ *
+ * Values below 128 get a bucket each; above, every power of two range [2^e, 2^(e+1))
+ * is split into 64 equal buckets, so a recorded value is known to within 1/64 (about
+ * 1.6%) whatever its magnitude. Values up to 2^43 ns (about 2.4 hours) are tracked;
+ * larger ones are counted in the last bucket. The whole histogram is a few thousand
+ * counters, so percentiles are exact up to the bucket width and recording never
+ * allocates.
+ *
+ * Counters are atomic: one thread records while another drains the counts into its
+ * own histogram at the end of each reporting interval (see Main), without losing or
+ * double counting a value and without the recording thread ever waiting.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 7;
+    private static final int HALF = 1 << (SUB_BITS - 1);
+    private static final int MAX_BITS = 43;
+    private static final int BUCKETS = (MAX_BITS - SUB_BITS + 2) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    // Bucket of value: exact below 2^SUB_BITS, then HALF buckets per power of two
+    static int bucket(long value) {
+        if (value < (1 << SUB_BITS)) return (int) Math.max(0, value);
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+        int i = shift * HALF + (int) (value >>> shift);
+        return Math.min(i, BUCKETS - 1);
+    }
+
+    // Largest value that falls in bucket i
+    static long highestValue(int i) {
+        if (i < (1 << SUB_BITS)) return i;
+        int shift = i / HALF - 1;
+        long sub = i - (long) shift * HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(nanos));
+    }
+
+    // Adds the counts of this histogram to target and resets them
+    public void drainInto(LatencyHistogram target) {
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts.get(i) != 0) target.counts.addAndGet(i, counts.getAndSet(i, 0));
+        }
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) counts.addAndGet(i, c);
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+    }
+
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) n += counts.get(i);
+        return n;
+    }
+
+    /**
+     * Smallest recorded value such that p percent of the values are at most it, rounded
+     * up to the end of its bucket; 0 for an empty histogram
+     */
+    public long percentile(double p) {
+        if (p < 0 || p > 100) throw new IllegalArgumentException("percentile must be in [0, 100]: " + p);
+        long n = count();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return highestValue(i);
+        }
+        return highestValue(BUCKETS - 1);
+    }
+
+    public long max() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) != 0) return highestValue(i);
+        }
+        return 0;
+    }
+
+    // Mean of the bucket midpoints
+    public double mean() {
+        long n = 0;
+        double sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = counts.get(i);
+            if (c == 0) continue;
+            long lo = i == 0 ? 0 : highestValue(i - 1) + 1;
+            sum += c * (lo + highestValue(i)) / 2.0;
+            n += c;
+        }
+        return n == 0 ? 0 : sum / n;
+    }
+}
@@ -0,0 +1,206 @@
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Queue;
+
+
+/**
+ * B-Tree specialized for primitive long keys, with the same operations as BTree
+ *
+ * Nodes keep their keys in a long[] instead of Integer[], so nothing is boxed on
+ * insert or lookup. Inside a node, the child to descend into and the insertion
+ * position are found by binary search, and keys/children are moved with
+ * System.arraycopy instead of element by element.
+ *
+ * Implemented operations: insert, contains, height, successor, predecessor, printByLevel
+ */
+
+public class LongBTree {
+
+    private int T; // the mindegree of the B-Tree
+
+    class BTreeNode {
+        int n;    // current number of keys contained in node
+        long key[] = new long[2 * T - 1];         //maximum 2T-1 keys
+        BTreeNode child[] = new BTreeNode[2 * T]; // maximum 2T children
+        boolean leaf = true;
+
+        public String toString(){
+            StringBuilder sb =new StringBuilder();
+            sb.append(" [ ");
+            for (int i=0; i<n; i++)
+                sb.append(" "+key[i]);
+            sb.append(" ] ");
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Constructor of an empty B-Tree of mindegree T
+     * @param t - degree of B tree
+     */
+    public LongBTree(int t) {
+        T = t;
+        root = new BTreeNode();
+        root.n = 0;
+        root.leaf = true;
+    }
+
+    private BTreeNode root; // root of tree
+
+    /**
+     * Number of keys in x that are strictly smaller than k
+     */
+    private static int lowerBound(BTreeNode x, long k) {
+        int lo = 0, hi = x.n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (x.key[mid] < k) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Number of keys in x that are smaller than or equal to k
+     */
+    private static int upperBound(BTreeNode x, long k) {
+        int lo = 0, hi = x.n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (x.key[mid] <= k) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Insert a key into a B-Tree in a single pass down the tree
+     * see [CLRS] algorithm
+     * @param key - new key to be inserted
+     */
+    public void insert(long key) {
+        BTreeNode r = root;
+        if (r.n == 2 * T - 1) { // if the root node is already full
+            BTreeNode s = new BTreeNode(); // preventively splits the root
+            root = s;
+            s.leaf = false;
+            s.n = 0;
+            s.child[0] = r;
+            split(s, 0, r);
+            insertNonfullStart(s, key);
+        } else {
+            insertNonfullStart(r, key);
+        }
+    }
+
+    /**
+     * Splits a node and introduces the new split as a child of the same parent
+     * see [CLRS] algorithm
+     * @param x - parent of node to split
+     * @param pos - position in parent where to link new node
+     * @param y - node to be split
+     */
+    private void split(BTreeNode x, int pos, BTreeNode y) {
+        BTreeNode z = new BTreeNode();
+        z.leaf = y.leaf; // new node z is leaf only if node y to be splitted was leaf
+        z.n = T - 1;
+        System.arraycopy(y.key, T, z.key, 0, T - 1); //copy right half of y into new node
+        if (!y.leaf) {
+            System.arraycopy(y.child, T, z.child, 0, T);
+            Arrays.fill(y.child, T, 2 * T, null);
+        }
+        y.n = T - 1;
+
+        //right shift children and keys in parent node
+        System.arraycopy(x.child, pos + 1, x.child, pos + 2, x.n - pos);
+        x.child[pos + 1] = z; //insert new node z as child of parent
+        System.arraycopy(x.key, pos, x.key, pos + 1, x.n - pos);
+        x.key[pos] = y.key[T - 1];
+        x.n = x.n + 1;
+    }
+
+    /**
+     * Inserts key k into node x which is assumed to be non-full when function is called.
+     * Walks down the tree, at all times guaranteeing that the node it moves to
+     * is not full by calling split as necessary
+     * see [CLRS] algorithm
+     * @param x - root (non-full node) of subtree where insertion is done
+     * @param k - new key to be inserted
+     */
+    private void insertNonfullStart(BTreeNode x, long k) {
+        while (!x.leaf) {
+            int i = upperBound(x, k); // search child to continue insertion
+            BTreeNode tmp = x.child[i];
+            if (tmp.n == 2 * T - 1) {
+                // if child is full, split it
+                split(x, i, tmp);
+                if (k >= x.key[i]) { // determines in which split half we insert
+                    i++;
+                }
+            }
+            x = x.child[i];
+        }
+        // x is a non-full leaf node, shift greater keys right to make place for new k
+        int i = upperBound(x, k);
+        System.arraycopy(x.key, i, x.key, i + 1, x.n - i);
+        x.key[i] = k;
+        x.n = x.n + 1;
+    }
+
+    public boolean contains(long key){
+        BTreeNode x = root;
+        while (true) {
+            int i = lowerBound(x, key);
+            if (i < x.n && x.key[i] == key) return true;
+            if (x.leaf) return false;
+            x = x.child[i];
+        }
+    }
+
+    public int height(){
+        int h = 1;
+        for (BTreeNode x = root; !x.leaf; x = x.child[0]) h++;
+        return h;
+    }
+
+    public void printByLevel(){
+        Queue<BTreeNode> q=new LinkedList<>();
+        q.add(root);
+        while(!q.isEmpty()){
+            BTreeNode cur=q.poll();
+            System.out.print(cur);
+            if(!cur.leaf){
+                for(int i=0;i<=cur.n;i++) q.add(cur.child[i]);
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * Smallest key strictly greater than key, or 0 if there is none (as in BTree)
+     */
+    public long successor(long key){
+        long result = 0;
+        BTreeNode x = root;
+        while (true) {
+            int i = upperBound(x, key);
+            if (i < x.n) result = x.key[i]; // keys further down child[i] are smaller, but still > key
+            if (x.leaf) return result;
+            x = x.child[i];
+        }
+    }
+
+    /**
+     * Largest key strictly smaller than key, or 0 if there is none (as in BTree)
+     */
+    public long predecessor(long key){
+        long result = 0;
+        BTreeNode x = root;
+        while (true) {
+            int i = lowerBound(x, key);
+            if (i > 0) result = x.key[i - 1];
+            if (x.leaf) return result;
+            x = x.child[i];
+        }
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * Comparison function on primitive longs, used by LongAVL instead of a boxing
+ * Comparator<Long>
+ */
+@FunctionalInterface
+public interface LongComparator {
+    int compare(long a, long b);
+}
@@ -1,5 +1,452 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * Load generator: replays a YCSB-style workload against BTree, G_AVL or G_BST
+ *
+ * The tree is first loaded with --records keys, then --threads threads run the
+ * operations of the workload until --duration seconds or --operations operations
+ * have passed. Every operation's latency goes to a LatencyHistogram per thread and
+ * operation type; every --interval seconds a line reports the throughput, the
+ * percentiles and the heap of that interval, and a summary per operation type
+ * closes the run.
+ *
+ * Workloads (percent of read / update / insert / scan):
+ *   read-heavy    95 /  5 /   0 /  0   (YCSB B)
+ *   update-heavy  50 / 50 /   0 /  0   (YCSB A)
+ *   scan-heavy     0 /  0 /   5 / 95   (YCSB E)
+ *   insert-only    0 /  0 / 100 /  0   (YCSB load phase)
+ * A read is a lookup, an update writes an existing key (remove and insert again for
+ * BTree, which holds keys only), an insert adds a new key, and a scan walks up to
+ * --scan-length keys after a given one.
+ *
+ * Records are numbered in insertion order and the key of record i is a fixed
+ * scrambling of i, so keys are spread over the int range; with --ordered-keys it is
+ * i itself and inserts append at the right end. Records for reads, updates and scans
+ * are picked by --distribution:
+ *   uniform - any record equally
+ *   zipfian - Zipf with exponent 0.99 over the loaded records, record 0 the hottest
+ *   latest  - Zipf over the records inserted last, the most recent the hottest
+ *
+ * The trees are not thread safe, so operations hold a read-write lock of the engine:
+ * reads and scans share it, updates and inserts take it alone. With --target the
+ * threads together pace themselves to that many operations per second, and latency
+ * is measured from when an operation was due rather than when it started, so a stall
+ * shows up in the latency of every operation it delayed (no coordinated omission).
+ *
+ * Usage: java Main [--engine BTree|G_AVL|G_BST] [--workload read-heavy] [--distribution zipfian]
+ *   [--threads 4] [--records 1000000] [--duration 30] [--operations 0] [--interval 1]
+ *   [--target 0] [--scan-length 100] [--ordered-keys] [--t 16] [--balancing NONE] [--seed 42]
+ */
 public class Main {
-    public static void main(String[] args) {
-        System.out.println("Hello, World!");
+
+    enum Op { READ, UPDATE, INSERT, SCAN }
+
+    enum Workload {
+        READ_HEAVY(95, 5, 0, 0),
+        UPDATE_HEAVY(50, 50, 0, 0),
+        SCAN_HEAVY(0, 0, 5, 95),
+        INSERT_ONLY(0, 0, 100, 0);
+
+        final int[] percent; // by Op ordinal
+
+        Workload(int read, int update, int insert, int scan) {
+            percent = new int[]{read, update, insert, scan};
+        }
+
+        Op pick(int roll) { // roll in [0, 100)
+            for (Op op : Op.values()) {
+                roll -= percent[op.ordinal()];
+                if (roll < 0) return op;
+            }
+            throw new IllegalStateException();
+        }
+
+        static Workload of(String name) {
+            return valueOf(name.toUpperCase().replace('-', '_'));
+        }
     }
-}
\ No newline at end of file
+
+    interface Engine {
+        boolean read(int key);
+        void update(int key);
+        void insert(int key);
+        int scan(int after, int length); // number of keys visited
+    }
+
+    static Engine btree(int t) {
+        BTree tree = new BTree(t);
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        return new Engine() {
+            public boolean read(int key) {
+                lock.readLock().lock();
+                try { return tree.contains(key); } finally { lock.readLock().unlock(); }
+            }
+            public void update(int key) {
+                lock.writeLock().lock();
+                try {
+                    tree.remove(key);
+                    tree.insert(key);
+                } finally { lock.writeLock().unlock(); }
+            }
+            public void insert(int key) {
+                lock.writeLock().lock();
+                try { tree.insert(key); } finally { lock.writeLock().unlock(); }
+            }
+            public int scan(int after, int length) {
+                lock.readLock().lock();
+                try {
+                    int n = 0;
+                    for (int k = after; n < length; n++) {
+                        int s = tree.successor(k);
+                        if (s == 0 && !tree.contains(0)) break; // 0 also means no successor
+                        if (s <= k) break;
+                        k = s;
+                    }
+                    return n;
+                } finally { lock.readLock().unlock(); }
+            }
+        };
+    }
+
+    static Engine avl() {
+        G_AVL<Integer, Integer> tree = new G_AVL<>();
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        return new Engine() {
+            public boolean read(int key) {
+                lock.readLock().lock();
+                try { return tree.get(key) != null; } finally { lock.readLock().unlock(); }
+            }
+            public void update(int key) {
+                lock.writeLock().lock();
+                try { tree.put(key, key); } finally { lock.writeLock().unlock(); }
+            }
+            public void insert(int key) {
+                update(key);
+            }
+            public int scan(int after, int length) {
+                lock.readLock().lock();
+                try {
+                    int n = 0;
+                    Iterator<Map.Entry<Integer, Integer>> it = tree.tailMap(after).iterator();
+                    while (n < length && it.hasNext()) {
+                        if (it.next().getKey() != after) n++;
+                    }
+                    return n;
+                } finally { lock.readLock().unlock(); }
+            }
+        };
+    }
+
+    static Engine bst(G_BST.Balancing balancing) {
+        G_BST<Integer, Integer> tree = new G_BST<>(balancing);
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        return new Engine() {
+            public boolean read(int key) {
+                lock.readLock().lock();
+                try { return tree.contains(key); } finally { lock.readLock().unlock(); }
+            }
+            public void update(int key) {
+                lock.writeLock().lock();
+                try { tree.put(key, key); } finally { lock.writeLock().unlock(); }
+            }
+            public void insert(int key) {
+                update(key);
+            }
+            public int scan(int after, int length) {
+                lock.readLock().lock();
+                try {
+                    int n = 0;
+                    for (G_BST<Integer, Integer>.Cursor c = tree.ascendingAfter(after); n < length && c.hasNext(); n++) {
+                        c.next();
+                    }
+                    return n;
+                } finally { lock.readLock().unlock(); }
+            }
+        };
+    }
+
+    /**
+     * Zipf distributed ranks in [0, n), rank 0 the most frequent
+     * see Gray et al., "Quickly generating billion-record synthetic databases" (as YCSB)
+     */
+    static class Zipfian {
+        private static final double THETA = 0.99;
+        private final long n;
+        private final double zetan, alpha, eta;
+
+        Zipfian(long n) {
+            this.n = n;
+            double z = 0;
+            for (long i = 1; i <= n; i++) z += 1 / Math.pow(i, THETA);
+            zetan = z;
+            alpha = 1 / (1 - THETA);
+            double zeta2 = 1 + 1 / Math.pow(2, THETA);
+            eta = (1 - Math.pow(2.0 / n, 1 - THETA)) / (1 - zeta2 / zetan);
+        }
+
+        long next(ThreadLocalRandom rnd) {
+            double u = rnd.nextDouble(), uz = u * zetan;
+            if (uz < 1) return 0;
+            if (uz < 1 + Math.pow(0.5, THETA)) return Math.min(1, n - 1);
+            return Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+        }
+    }
+
+    // ---- run configuration ----
+
+    private final Map<String, String> options;
+    private final Engine engine;
+    private final Workload workload;
+    private final String distribution;
+    private final int threads, records, scanLength;
+    private final long operations, durationNanos, intervalNanos;
+    private final double target;
+    private final boolean orderedKeys;
+    private final int seed;
+    private final Zipfian zipfian;
+
+    private final AtomicLong nextRecord = new AtomicLong(); // records inserted or being inserted
+    private final AtomicLong remaining = new AtomicLong();  // operations left when --operations is set
+    private volatile boolean stop;
+    private volatile Throwable failure;
+
+    Main(Map<String, String> options) {
+        this.options = options;
+        String name = option("engine", "BTree");
+        switch (name) {
+            case "BTree": engine = btree(Integer.parseInt(option("t", "16"))); break;
+            case "G_AVL": engine = avl(); break;
+            case "G_BST": engine = bst(G_BST.Balancing.valueOf(option("balancing", "NONE"))); break;
+            default: throw new IllegalArgumentException("unknown engine " + name + ", expected BTree, G_AVL or G_BST");
+        }
+        workload = Workload.of(option("workload", "read-heavy"));
+        distribution = option("distribution", "zipfian");
+        if (!distribution.equals("uniform") && !distribution.equals("zipfian") && !distribution.equals("latest")) {
+            throw new IllegalArgumentException("unknown distribution " + distribution + ", expected uniform, zipfian or latest");
+        }
+        threads = Integer.parseInt(option("threads", "4"));
+        records = Integer.parseInt(option("records", "1000000"));
+        operations = Long.parseLong(option("operations", "0"));
+        durationNanos = (long) (Double.parseDouble(option("duration", "30")) * 1e9);
+        intervalNanos = (long) (Double.parseDouble(option("interval", "1")) * 1e9);
+        target = Double.parseDouble(option("target", "0"));
+        scanLength = Integer.parseInt(option("scan-length", "100"));
+        orderedKeys = options.containsKey("ordered-keys");
+        seed = Integer.parseInt(option("seed", "42"));
+        if (threads < 1 || records < 1 || scanLength < 1 || intervalNanos <= 0) {
+            throw new IllegalArgumentException("threads, records, scan-length and interval must be positive");
+        }
+        zipfian = distribution.equals("uniform") ? null : new Zipfian(records);
+        options.keySet().removeAll(List.of("engine", "t", "balancing", "workload", "distribution", "threads",
+                "records", "operations", "duration", "interval", "target", "scan-length", "ordered-keys", "seed"));
+        if (!options.isEmpty()) throw new IllegalArgumentException("unknown options " + options.keySet());
+    }
+
+    private String option(String name, String fallback) {
+        return options.getOrDefault(name, fallback);
+    }
+
+    // Key of record i: murmur3's finalizer, a bijection on int, unless keys are ordered
+    int key(long record) {
+        int h = (int) record;
+        if (orderedKeys) return h;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    // Existing record for a read, update or scan
+    long pick(ThreadLocalRandom rnd) {
+        long inserted = Math.max(1, nextRecord.get());
+        switch (distribution) {
+            case "uniform": return rnd.nextLong(inserted);
+            case "zipfian": return Math.min(zipfian.next(rnd), inserted - 1);
+            default: return Math.max(0, inserted - 1 - zipfian.next(rnd)); // latest
+        }
+    }
+
+    // ---- workers ----
+
+    class Worker implements Runnable {
+        final LatencyHistogram[] histograms = new LatencyHistogram[Op.values().length];
+        private final long pacingNanos; // time between operations of this thread, 0 for as fast as possible
+        volatile long scanned;
+
+        Worker() {
+            for (int i = 0; i < histograms.length; i++) histograms[i] = new LatencyHistogram();
+            pacingNanos = target > 0 ? (long) (threads * 1e9 / target) : 0;
+        }
+
+        public void run() {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            long due = System.nanoTime();
+            try {
+                while (!stop) {
+                    if (operations > 0 && remaining.getAndDecrement() <= 0) break;
+                    long start = System.nanoTime();
+                    if (pacingNanos > 0) {
+                        while (start < due) {
+                            LockSupport.parkNanos(due - start);
+                            start = System.nanoTime();
+                        }
+                        start = due; // latency counts from when the operation was due
+                        due += pacingNanos;
+                    }
+                    Op op = workload.pick(rnd.nextInt(100));
+                    switch (op) {
+                        case READ: engine.read(key(pick(rnd))); break;
+                        case UPDATE: engine.update(key(pick(rnd))); break;
+                        case INSERT: engine.insert(key(nextRecord.getAndIncrement())); break;
+                        case SCAN: scanned += engine.scan(key(pick(rnd)), 1 + rnd.nextInt(scanLength)); break;
+                    }
+                    histograms[op.ordinal()].record(System.nanoTime() - start);
+                }
+            } catch (Throwable e) {
+                failure = e;
+                stop = true;
+            }
+        }
+    }
+
+    // ---- reporting ----
+
+    private static double micros(long nanos) {
+        return nanos / 1e3;
+    }
+
+    private static String heap() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        return String.format("%7.1f / %7.1f", heap.getUsed() / 1048576.0, heap.getCommitted() / 1048576.0);
+    }
+
+    void load() {
+        long t0 = System.nanoTime();
+        int[] order = new int[records]; // random order, so that ordered keys do not degenerate G_BST
+        for (int i = 0; i < records; i++) order[i] = i;
+        Random rnd = new Random(seed);
+        for (int i = records - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1), tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        for (int r : order) engine.insert(key(r));
+        nextRecord.set(records);
+        System.out.printf("loaded %d records in %.1f s, heap used / committed MB %s%n",
+                records, (System.nanoTime() - t0) / 1e9, heap());
+    }
+
+    void run() throws InterruptedException {
+        load();
+        remaining.set(operations);
+        Worker[] workers = new Worker[threads];
+        Thread[] running = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker();
+            running[i] = new Thread(workers[i], "load-" + i);
+        }
+
+        LatencyHistogram[] total = new LatencyHistogram[Op.values().length];
+        for (int i = 0; i < total.length; i++) total[i] = new LatencyHistogram();
+        LatencyHistogram interval = new LatencyHistogram();
+        LatencyHistogram drained = new LatencyHistogram();
+
+        System.out.printf("%8s %12s %12s %10s %10s %10s %10s %19s%n",
+                "time s", "ops", "ops/s", "p50 us", "p99 us", "p99.9 us", "max us", "heap used/comm MB");
+        long start = System.nanoTime();
+        for (Thread t : running) t.start();
+        long last = start;
+        boolean done = false;
+        while (!done) {
+            long next = last + intervalNanos;
+            long end = start + durationNanos;
+            long wakeUp = Math.min(next, end);
+            for (long now = System.nanoTime(); now < wakeUp && !finished(running); now = System.nanoTime()) {
+                Thread.sleep(Math.max(1, Math.min(100, (wakeUp - now) / 1_000_000)));
+            }
+            long now = System.nanoTime();
+            if (now >= end || finished(running)) {
+                stop = true;
+                for (Thread t : running) t.join();
+                now = System.nanoTime();
+                done = true;
+            }
+            interval.reset();
+            for (Op op : Op.values()) {
+                drained.reset();
+                for (Worker w : workers) w.histograms[op.ordinal()].drainInto(drained);
+                interval.add(drained);
+                total[op.ordinal()].add(drained);
+            }
+            long n = interval.count();
+            System.out.printf("%8.1f %12d %12.0f %10.2f %10.2f %10.2f %10.2f %19s%n",
+                    (now - start) / 1e9, n, n / ((now - last) / 1e9), micros(interval.percentile(50)),
+                    micros(interval.percentile(99)), micros(interval.percentile(99.9)), micros(interval.max()), heap());
+            last = now;
+        }
+        if (failure != null) throw new IllegalStateException("worker failed", failure);
+
+        double seconds = (last - start) / 1e9;
+        System.out.printf("%n%-8s %12s %12s %10s %10s %10s %10s %10s%n",
+                "op", "count", "ops/s", "mean us", "p50 us", "p99 us", "p99.9 us", "max us");
+        for (Op op : Op.values()) {
+            LatencyHistogram h = total[op.ordinal()];
+            long n = h.count();
+            if (n == 0) continue;
+            System.out.printf("%-8s %12d %12.0f %10.2f %10.2f %10.2f %10.2f %10.2f%n", op, n, n / seconds,
+                    micros((long) h.mean()), micros(h.percentile(50)), micros(h.percentile(99)),
+                    micros(h.percentile(99.9)), micros(h.max()));
+        }
+        long scanned = 0;
+        for (Worker w : workers) scanned += w.scanned;
+        if (scanned > 0) System.out.printf("scanned %d keys%n", scanned);
+        System.out.printf("records %d, heap used / committed MB %s%n", nextRecord.get(), heap());
+    }
+
+    private static boolean finished(Thread[] threads) {
+        for (Thread t : threads) if (t.isAlive()) return false;
+        return true;
+    }
+
+    // --name value pairs; a flag without a value (--ordered-keys) maps to ""
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("expected an option, got " + args[i]);
+            String name = args[i].substring(2);
+            boolean hasValue = i + 1 < args.length && !args[i + 1].startsWith("--");
+            options.put(name, hasValue ? args[++i] : "");
+        }
+        return options;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Main main;
+        try {
+            main = new Main(parse(args));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: java Main [--engine BTree|G_AVL|G_BST] [--workload read-heavy|update-heavy|scan-heavy|insert-only]");
+            System.err.println("  [--distribution uniform|zipfian|latest] [--threads n] [--records n] [--duration s]");
+            System.err.println("  [--operations n] [--interval s] [--target ops/s] [--scan-length n] [--ordered-keys]");
+            System.err.println("  [--t min degree of BTree] [--balancing NONE|SCAPEGOAT|TREAP for G_BST] [--seed n]");
+            System.exit(2);
+            return;
+        }
+        main.run();
+    }
+}
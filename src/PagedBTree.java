@@ -0,0 +1,367 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Disk resident B-Tree with int keys
+ *
+ * Every node is stored in a fixed size page of a file; child pointers are page ids.
+ * Pages are accessed through a BufferPool, which keeps at most a bounded number of
+ * them in memory and evicts cold pages with the clock algorithm. Page 0 is a header
+ * holding T, the page size, the root page id and the number of pages, so opening an
+ * existing file only reads that header.
+ *
+ * Pages are read and written with positional FileChannel I/O rather than mapped, so
+ * the memory held by the index is exactly the buffer pool.
+ *
+ * Page layout (big endian ints):
+ *   n | leaf | key[0 .. 2T-2] | child[0 .. 2T-1]
+ * With T = 255 a node fills one 4 KiB page.
+ *
+ * Implemented operations: insert, contains, height, successor, predecessor, flush, close
+ */
+
+public class PagedBTree implements Closeable {
+
+    private static final int MAGIC = 0x50425452; // "PBTR"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int PAGE_ALIGN = 4096;
+
+    // offsets inside a node page
+    private static final int N = 0;
+    private static final int LEAF = 4;
+    private static final int KEYS = 8;
+
+    private final FileChannel channel;
+    private final BufferPool pool;
+    private final int T;          // the mindegree of the B-Tree
+    private final int pageSize;
+    private final int childOffset;
+
+    private int rootId;    // page id of the root
+    private int pageCount; // pages in use, including the header page
+    private boolean headerDirty;
+
+    private PagedBTree(FileChannel channel, int t, int pageSize, int rootId, int pageCount, int poolPages) {
+        this.channel = channel;
+        this.T = t;
+        this.pageSize = pageSize;
+        this.childOffset = KEYS + 4 * (2 * t - 1);
+        this.rootId = rootId;
+        this.pageCount = pageCount;
+        this.pool = new BufferPool(channel, pageSize, poolPages);
+    }
+
+    /**
+     * Creates an empty tree in file, replacing its previous content
+     * @param t - degree of B tree
+     * @param poolPages - number of pages the buffer pool keeps in memory (at least 4)
+     */
+    public static PagedBTree create(Path file, int t, int poolPages) throws IOException {
+        if (t < 2) throw new IllegalArgumentException("mindegree must be at least 2: " + t);
+        if (poolPages < 4) throw new IllegalArgumentException("buffer pool needs at least 4 pages: " + poolPages);
+        if (pageSize(t) > Integer.MAX_VALUE) throw new IllegalArgumentException("mindegree too large for a page: " + t);
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        PagedBTree tree = new PagedBTree(ch, t, (int) pageSize(t), 1, 2, poolPages);
+        BufferPool.Frame root = tree.pool.pinNew(1);
+        setLeaf(root, true);
+        tree.pool.unpin(root, true);
+        tree.headerDirty = true;
+        tree.flush();
+        return tree;
+    }
+
+    /**
+     * Opens a tree previously written by create / flush
+     * @param poolPages - number of pages the buffer pool keeps in memory (at least 4)
+     */
+    public static PagedBTree open(Path file, int poolPages) throws IOException {
+        if (poolPages < 4) throw new IllegalArgumentException("buffer pool needs at least 4 pages: " + poolPages);
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES);
+        while (h.hasRemaining()) {
+            if (ch.read(h, h.position()) < 0) {
+                ch.close();
+                throw new IOException(file + ": truncated header");
+            }
+        }
+        h.flip();
+        if (h.getInt() != MAGIC || h.getInt() != VERSION) {
+            ch.close();
+            throw new IOException(file + ": not a PagedBTree file");
+        }
+        int t = h.getInt();
+        int pageSize = h.getInt();
+        int rootId = h.getInt();
+        int pageCount = h.getInt();
+        String error = null;
+        if (t < 2) error = "mindegree " + t;
+        else if (pageSize != pageSize(t)) error = "page size " + pageSize + " for mindegree " + t;
+        else if (rootId < 1 || rootId >= pageCount) error = "root page " + rootId + " of " + pageCount;
+        else if ((long) pageCount * pageSize > ch.size()) error = pageCount + " pages in " + ch.size() + " bytes";
+        if (error != null) {
+            ch.close();
+            throw new IOException(file + ": corrupt header, " + error);
+        }
+        return new PagedBTree(ch, t, pageSize, rootId, pageCount, poolPages);
+    }
+
+    // Bytes of a page holding a node of mindegree t, rounded up to PAGE_ALIGN; long so a huge t cannot overflow
+    private static long pageSize(int t) {
+        long needed = KEYS + 4L * (2L * t - 1) + 4L * (2L * t);
+        return (needed + PAGE_ALIGN - 1) / PAGE_ALIGN * PAGE_ALIGN;
+    }
+
+    // ---- page accessors ----
+
+    private static int n(BufferPool.Frame f) { return f.buffer().getInt(N); }
+
+    private static void setN(BufferPool.Frame f, int n) { f.buffer().putInt(N, n); }
+
+    private static boolean leaf(BufferPool.Frame f) { return f.buffer().getInt(LEAF) != 0; }
+
+    private static void setLeaf(BufferPool.Frame f, boolean leaf) { f.buffer().putInt(LEAF, leaf ? 1 : 0); }
+
+    private static int key(BufferPool.Frame f, int i) { return f.buffer().getInt(KEYS + 4 * i); }
+
+    private static void setKey(BufferPool.Frame f, int i, int k) { f.buffer().putInt(KEYS + 4 * i, k); }
+
+    private int child(BufferPool.Frame f, int i) { return f.buffer().getInt(childOffset + 4 * i); }
+
+    private void setChild(BufferPool.Frame f, int i, int id) { f.buffer().putInt(childOffset + 4 * i, id); }
+
+    /**
+     * Number of keys in f that are strictly smaller than k
+     */
+    private static int lowerBound(BufferPool.Frame f, int k) {
+        int lo = 0, hi = n(f);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(f, mid) < k) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Number of keys in f that are smaller than or equal to k
+     */
+    private static int upperBound(BufferPool.Frame f, int k) {
+        int lo = 0, hi = n(f);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(f, mid) <= k) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private BufferPool.Frame newPage() throws IOException {
+        headerDirty = true;
+        return pool.pinNew(pageCount++);
+    }
+
+    // ---- operations ----
+
+    /**
+     * Insert a key into a B-Tree in a single pass down the tree
+     * see [CLRS] algorithm
+     * @param key - new key to be inserted
+     */
+    public void insert(int key) {
+        try {
+            BufferPool.Frame r = pool.pin(rootId);
+            if (n(r) == 2 * T - 1) { // if the root node is already full
+                BufferPool.Frame s = newPage(); // preventively splits the root
+                setLeaf(s, false);
+                setChild(s, 0, rootId);
+                rootId = s.pageId();
+                split(s, 0, r);
+                pool.unpin(r, true);
+                insertNonfullStart(s, key);
+            } else {
+                insertNonfullStart(r, key);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Splits page y and introduces the new page as a child of the same parent
+     * see [CLRS] algorithm
+     * @param x - parent of node to split
+     * @param pos - position in parent where to link new node
+     * @param y - node to be split
+     */
+    private void split(BufferPool.Frame x, int pos, BufferPool.Frame y) throws IOException {
+        BufferPool.Frame z = newPage();
+        setLeaf(z, leaf(y)); // new node z is leaf only if node y to be splitted was leaf
+        setN(z, T - 1);
+        for (int j = 0; j < T - 1; j++) { //copy right half of y into new node
+            setKey(z, j, key(y, j + T));
+        }
+        if (!leaf(y)) {
+            for (int j = 0; j < T; j++) {
+                setChild(z, j, child(y, j + T));
+            }
+        }
+        setN(y, T - 1);
+
+        int xn = n(x);
+        for (int j = xn; j >= pos + 1; j--) { //right shift children in parent node
+            setChild(x, j + 1, child(x, j));
+        }
+        setChild(x, pos + 1, z.pageId()); //insert new node z as child of parent
+        for (int j = xn - 1; j >= pos; j--) {
+            setKey(x, j + 1, key(x, j));
+        }
+        setKey(x, pos, key(y, T - 1));
+        setN(x, xn + 1);
+        pool.unpin(z, true);
+    }
+
+    /**
+     * Inserts k below the pinned, non-full page x, splitting full children on the way
+     * down. Unpins every page it pinned, including x.
+     */
+    private void insertNonfullStart(BufferPool.Frame x, int k) throws IOException {
+        boolean xDirty = false;
+        while (!leaf(x)) {
+            int i = upperBound(x, k); // search child to continue insertion
+            BufferPool.Frame c = pool.pin(child(x, i));
+            boolean cDirty = false;
+            if (n(c) == 2 * T - 1) {
+                // if child is full, split it
+                split(x, i, c);
+                xDirty = true;
+                cDirty = true;
+                if (k >= key(x, i)) { // determines in which split half we insert
+                    pool.unpin(c, true);
+                    c = pool.pin(child(x, i + 1));
+                }
+            }
+            pool.unpin(x, xDirty);
+            x = c;
+            xDirty = cDirty;
+        }
+        // x is a non-full leaf page, shift greater keys right to make place for new k
+        int n = n(x);
+        int i = upperBound(x, k);
+        for (int j = n - 1; j >= i; j--) setKey(x, j + 1, key(x, j));
+        setKey(x, i, k);
+        setN(x, n + 1);
+        pool.unpin(x, true);
+    }
+
+    public boolean contains(int key) {
+        try {
+            int id = rootId;
+            while (true) {
+                BufferPool.Frame x = pool.pin(id);
+                int i = lowerBound(x, key);
+                boolean found = i < n(x) && key(x, i) == key;
+                boolean leaf = leaf(x);
+                if (!found && !leaf) id = child(x, i);
+                pool.unpin(x, false);
+                if (found) return true;
+                if (leaf) return false;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int height() {
+        try {
+            int h = 1;
+            BufferPool.Frame x = pool.pin(rootId);
+            while (!leaf(x)) {
+                int id = child(x, 0);
+                pool.unpin(x, false);
+                x = pool.pin(id);
+                h++;
+            }
+            pool.unpin(x, false);
+            return h;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Smallest key strictly greater than key, or 0 if there is none (as in BTree)
+     */
+    public int successor(int key) {
+        try {
+            int result = 0;
+            int id = rootId;
+            while (true) {
+                BufferPool.Frame x = pool.pin(id);
+                int i = upperBound(x, key);
+                if (i < n(x)) result = key(x, i);
+                boolean leaf = leaf(x);
+                if (!leaf) id = child(x, i);
+                pool.unpin(x, false);
+                if (leaf) return result;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Largest key strictly smaller than key, or 0 if there is none (as in BTree)
+     */
+    public int predecessor(int key) {
+        try {
+            int result = 0;
+            int id = rootId;
+            while (true) {
+                BufferPool.Frame x = pool.pin(id);
+                int i = lowerBound(x, key);
+                if (i > 0) result = key(x, i - 1);
+                boolean leaf = leaf(x);
+                if (!leaf) id = child(x, i);
+                pool.unpin(x, false);
+                if (leaf) return result;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public BufferPool bufferPool() {
+        return pool;
+    }
+
+    /**
+     * Writes all dirty pages and the header to disk
+     */
+    public void flush() throws IOException {
+        pool.flush();
+        if (headerDirty) {
+            ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES);
+            h.putInt(MAGIC).putInt(VERSION).putInt(T).putInt(pageSize).putInt(rootId).putInt(pageCount);
+            h.flip();
+            while (h.hasRemaining()) channel.write(h, h.position());
+            channel.force(false);
+            headerDirty = false;
+        }
+    }
+
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable (persistent) AVL map
+ *
+ * put and remove never modify a node: they return a new map that shares every
+ * untouched subtree with the old one and copies only the O(log n) nodes on the path
+ * to the key (plus the few nodes created by rotations). Any PersistentAVL is
+ * therefore a consistent snapshot that can be read by any number of threads without
+ * synchronization; see ConcurrentAVLMap for a mutable map built on top of it.
+ */
+public final class PersistentAVL<K extends Comparable<K>, V> {
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final Node<K, V> left, right;
+        final int height;
+        final int size;
+
+        Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+            this.size = 1 + size(left) + size(right);
+        }
+
+        public String toString() {
+            return "(" + key + ", " + value + ")";
+        }
+    }
+
+    private static final PersistentAVL<?, ?> EMPTY = new PersistentAVL<>(null);
+
+    private final Node<K, V> root;
+
+    private PersistentAVL(Node<K, V> root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K extends Comparable<K>, V> PersistentAVL<K, V> empty() {
+        return (PersistentAVL<K, V>) EMPTY;
+    }
+
+    private static int height(Node<?, ?> node) {
+        return node == null ? -1 : node.height;
+    }
+
+    private static int size(Node<?, ?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    // New node (key, value, left, right), rotated if the two subtrees differ in height by 2
+    private static <K, V> Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right) {
+        int bf = height(left) - height(right);
+        // Left heavy
+        if (bf > 1) {
+            if (height(left.left) >= height(left.right)) {  // Left-Left case
+                return new Node<>(left.key, left.value, left.left, new Node<>(key, value, left.right, right));
+            }
+            Node<K, V> lr = left.right;  // Left-Right case
+            return new Node<>(lr.key, lr.value,
+                    new Node<>(left.key, left.value, left.left, lr.left),
+                    new Node<>(key, value, lr.right, right));
+        }
+        // Right heavy
+        if (bf < -1) {
+            if (height(right.right) >= height(right.left)) {  // Right-Right case
+                return new Node<>(right.key, right.value, new Node<>(key, value, left, right.left), right.right);
+            }
+            Node<K, V> rl = right.left;  // Right-Left case
+            return new Node<>(rl.key, rl.value,
+                    new Node<>(key, value, left, rl.left),
+                    new Node<>(right.key, right.value, rl.right, right.right));
+        }
+        return new Node<>(key, value, left, right);
+    }
+
+    // Put (insert or update); returns this map if key is already mapped to this exact value
+    public PersistentAVL<K, V> put(K key, V value) {
+        Node<K, V> r = put(root, key, value);
+        return r == root ? this : new PersistentAVL<>(r);
+    }
+
+    private static <K extends Comparable<K>, V> Node<K, V> put(Node<K, V> root, K key, V value) {
+        if (root == null) return new Node<>(key, value, null, null);
+        int cmp = key.compareTo(root.key);
+        if (cmp < 0) {
+            Node<K, V> l = put(root.left, key, value);
+            return l == root.left ? root : balance(root.key, root.value, l, root.right);
+        } else if (cmp > 0) {
+            Node<K, V> r = put(root.right, key, value);
+            return r == root.right ? root : balance(root.key, root.value, root.left, r);
+        }
+        return root.value == value ? root : new Node<>(key, value, root.left, root.right);
+    }
+
+    // Remove; returns this map if key is absent
+    public PersistentAVL<K, V> remove(K key) {
+        Node<K, V> r = remove(root, key);
+        return r == root ? this : new PersistentAVL<>(r);
+    }
+
+    private static <K extends Comparable<K>, V> Node<K, V> remove(Node<K, V> root, K key) {
+        if (root == null) return null;
+        int cmp = key.compareTo(root.key);
+        if (cmp < 0) {
+            Node<K, V> l = remove(root.left, key);
+            return l == root.left ? root : balance(root.key, root.value, l, root.right);
+        } else if (cmp > 0) {
+            Node<K, V> r = remove(root.right, key);
+            return r == root.right ? root : balance(root.key, root.value, root.left, r);
+        }
+        if (root.left == null) return root.right;
+        if (root.right == null) return root.left;
+        Node<K, V> pred = root.left;  // In-order predecessor
+        while (pred.right != null) pred = pred.right;
+        return balance(pred.key, pred.value, removeMax(root.left), root.right);
+    }
+
+    private static <K, V> Node<K, V> removeMax(Node<K, V> root) {
+        if (root.right == null) return root.left;
+        return balance(root.key, root.value, root.left, removeMax(root.right));
+    }
+
+    // Get
+    public V get(K key) {
+        Node<K, V> cur = root;
+        while (cur != null) {
+            int cmp = key.compareTo(cur.key);
+            if (cmp < 0) cur = cur.left;
+            else if (cmp > 0) cur = cur.right;
+            else return cur.value;
+        }
+        return null;
+    }
+
+    public boolean containsKey(K key) {
+        Node<K, V> cur = root;
+        while (cur != null) {
+            int cmp = key.compareTo(cur.key);
+            if (cmp < 0) cur = cur.left;
+            else if (cmp > 0) cur = cur.right;
+            else return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public int height() {
+        return height(root);
+    }
+
+    // Calls action on every entry in key order
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        forEach(root, action);
+    }
+
+    private static <K, V> void forEach(Node<K, V> root, BiConsumer<? super K, ? super V> action) {
+        if (root == null) return;
+        forEach(root.left, action);
+        action.accept(root.key, root.value);
+        forEach(root.right, action);
+    }
+}
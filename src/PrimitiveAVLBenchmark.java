@@ -0,0 +1,65 @@
+import java.util.Random;
+
+
+/**
+ * Memory per entry and get latency of G_AVL<Integer, V> against IntAVL<V> and IntIntAVL
+ *
+ * Memory is the growth of the used heap (after GC) while the map is alive; latency is
+ * the average time of a get on a random present key, measured after a warm-up pass.
+ *
+ * Usage: java PrimitiveAVLBenchmark [entries]
+ */
+public class PrimitiveAVLBenchmark {
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int[] keys = new Random(42).ints(n).toArray();
+        int[] probes = new int[1 << 20];
+        Random rnd = new Random(7);
+        for (int i = 0; i < probes.length; i++) probes[i] = keys[rnd.nextInt(n)];
+        Object value = "v"; // one shared value, so only the map structure is measured
+        long sink = 0;
+
+        System.out.printf("%-26s %14s %12s%n", "map", "bytes/entry", "get ns/op");
+
+        long before = usedHeap();
+        G_AVL<Integer, Object> generic = new G_AVL<>();
+        for (int k : keys) generic.put(k, value);
+        long bytes = usedHeap() - before;
+        for (int r = 0; r < 2; r++) for (int k : probes) sink += generic.get(k) == null ? 0 : 1;
+        long t0 = System.nanoTime();
+        for (int r = 0; r < 3; r++) for (int k : probes) sink += generic.get(k) == null ? 0 : 1;
+        double ns = (System.nanoTime() - t0) / (3.0 * probes.length);
+        System.out.printf("%-26s %14.1f %12.1f%n", "G_AVL<Integer, Object>", (double) bytes / n, ns);
+        generic = null;
+
+        before = usedHeap();
+        IntAVL<Object> primitive = new IntAVL<>();
+        for (int k : keys) primitive.put(k, value);
+        bytes = usedHeap() - before;
+        for (int r = 0; r < 2; r++) for (int k : probes) sink += primitive.get(k) == null ? 0 : 1;
+        t0 = System.nanoTime();
+        for (int r = 0; r < 3; r++) for (int k : probes) sink += primitive.get(k) == null ? 0 : 1;
+        ns = (System.nanoTime() - t0) / (3.0 * probes.length);
+        System.out.printf("%-26s %14.1f %12.1f%n", "IntAVL<Object>", (double) bytes / n, ns);
+        primitive = null;
+
+        before = usedHeap();
+        IntIntAVL ints = new IntIntAVL();
+        for (int k : keys) ints.put(k, k);
+        bytes = usedHeap() - before;
+        for (int r = 0; r < 2; r++) for (int k : probes) sink += ints.getOrDefault(k, 0);
+        t0 = System.nanoTime();
+        for (int r = 0; r < 3; r++) for (int k : probes) sink += ints.getOrDefault(k, 0);
+        ns = (System.nanoTime() - t0) / (3.0 * probes.length);
+        System.out.printf("%-26s %14.1f %12.1f%n", "IntIntAVL", (double) bytes / n, ns);
+
+        if (sink == 42) System.out.println(); // keep the results alive
+    }
+}
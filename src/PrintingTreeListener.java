@@ -0,0 +1,34 @@
+import java.io.PrintStream;
+
+/**
+ * TreeListener that prints splits, rotations and height changes, for debugging.
+ * This replaces the "Split node ..." line BTree used to print on every split.
+ */
+public class PrintingTreeListener implements TreeListener {
+
+    private final PrintStream out;
+
+    public PrintingTreeListener() {
+        this(System.out);
+    }
+
+    public PrintingTreeListener(PrintStream out) {
+        this.out = out;
+    }
+
+    public void onSplit(Object node) {
+        out.println("Split node " + node);
+    }
+
+    public void onRotateLeft() {
+        out.println("Rotate left");
+    }
+
+    public void onRotateRight() {
+        out.println("Rotate right");
+    }
+
+    public void onHeightChange(int oldHeight, int newHeight) {
+        out.println("Height " + oldHeight + " -> " + newHeight);
+    }
+}
@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+
+/**
+ * Throughput of ShardedAVLMap against a G_AVL behind one lock and a
+ * ConcurrentSkipListMap, for 1 to 64 threads
+ *
+ * Each thread runs a mix of get and put on uniformly random keys for a fixed time;
+ * the map is pre-filled with half of the key space. The sharded map starts with its
+ * boundaries spread evenly over the key space.
+ *
+ * Usage: java ShardedAVLBenchmark [seconds per run] [put percentage] [key space] [shards]
+ */
+public class ShardedAVLBenchmark {
+
+    interface IntMap {
+        void put(int key);
+        boolean get(int key);
+    }
+
+    static IntMap sharded(int shards, int keySpace) {
+        List<Integer> points = new ArrayList<>();
+        for (int i = 1; i < shards; i++) points.add((int) ((long) keySpace * i / shards));
+        ShardedAVLMap<Integer, Integer> map = new ShardedAVLMap<>(points);
+        return new IntMap() {
+            public void put(int key) { map.put(key, key); }
+            public boolean get(int key) { return map.get(key) != null; }
+        };
+    }
+
+    static IntMap singleLock() {
+        G_AVL<Integer, Integer> map = new G_AVL<>();
+        return new IntMap() {
+            public synchronized void put(int key) { map.put(key, key); }
+            public synchronized boolean get(int key) { return map.get(key) != null; }
+        };
+    }
+
+    static IntMap skipList() {
+        ConcurrentSkipListMap<Integer, Integer> map = new ConcurrentSkipListMap<>();
+        return new IntMap() {
+            public void put(int key) { map.put(key, key); }
+            public boolean get(int key) { return map.get(key) != null; }
+        };
+    }
+
+    static double run(IntMap map, int threads, int seconds, int putPercent, int keySpace) throws InterruptedException {
+        for (int i = 0; i < keySpace; i += 2) map.put(i);
+        return Throughput.run(threads, seconds, rnd -> {
+            int key = rnd.nextInt(keySpace);
+            if (rnd.nextInt(100) < putPercent) map.put(key);
+            else map.get(key);
+        });
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int putPercent = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int keySpace = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+        int shards = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+
+        System.out.println("put%=" + putPercent + " keys=" + keySpace + " shards=" + shards + " (ops/s)");
+        System.out.printf("%8s %16s %16s %16s%n", "threads", "ShardedAVLMap", "single lock", "SkipListMap");
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            double a = run(sharded(shards, keySpace), threads, seconds, putPercent, keySpace);
+            double b = run(singleLock(), threads, seconds, putPercent, keySpace);
+            double c = run(skipList(), threads, seconds, putPercent, keySpace);
+            System.out.printf("%8d %16.0f %16.0f %16.0f%n", threads, a, b, c);
+        }
+    }
+}
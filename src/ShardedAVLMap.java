@@ -0,0 +1,409 @@
+import java.lang.reflect.Array;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Thread-safe sorted map made of G_AVL shards, each owning a range of keys
+ *
+ * Shard i holds the keys in [lo_i, hi_i), the ranges covering all keys in order, and
+ * is guarded by its own StampedLock, so operations on different shards never wait for
+ * each other. Writes take the shard's write lock. Reads first walk the shard under an
+ * optimistic stamp, without writing anything shared, and fall back to the read lock
+ * only if a write got in the way.
+ *
+ * Boundaries move while the map is in use. Operations count hits on their shard (a
+ * sample of one in HIT_SAMPLE); about every REBALANCE_EVERY operations, or on
+ * rebalance(), the load of each shard is taken as its share of the keys plus its share
+ * of the hits, and the most loaded shard, if above SKEW times the average, gives keys
+ * to its lighter neighbour: as many as
+ * even out the two loads if the load is spread evenly over its keys. Moving keys is a
+ * split and a join of the two G_AVL trees, O(log n) under both shards' write locks.
+ * An operation routes by the boundaries it reads without locking and checks under the
+ * lock (or stamp) that its shard still owns the key, starting over if it does not.
+ *
+ * min, max, size and iteration look at one shard at a time: they are exact when no
+ * write runs at the same time, and otherwise reflect each shard as it was when visited.
+ * Iteration copies up to ITERATION_BATCH entries at a time under the shard's read lock
+ * and never holds a lock while the caller runs.
+ */
+public class ShardedAVLMap<K extends Comparable<K>, V> {
+    static final int REBALANCE_EVERY = 1 << 16;
+    static final double SKEW = 2.0;
+    static final int ITERATION_BATCH = 256;
+    static final int HIT_SAMPLE = 16; // power of two
+    private static final int MAX_STEPS = 64; // taller than any AVL tree of int size, see G_AVL.getRacy
+
+    private final class Shard {
+        final StampedLock lock = new StampedLock();
+        final LongAdder hits = new LongAdder();
+        G_AVL<K, V> map = new G_AVL<>();
+        volatile K lo, hi; // keys in [lo, hi), null is unbounded; changed under the write lock
+
+        boolean owns(K key) {
+            K l = lo, h = hi;
+            return (l == null || l.compareTo(key) <= 0) && (h == null || key.compareTo(h) < 0);
+        }
+    }
+
+    private final Shard[] shards;
+    private final ReentrantLock rebalancing = new ReentrantLock();
+
+    /**
+     * Map with one shard more than there are split points
+     * @param splitPoints - initial boundaries, in strictly increasing order
+     */
+    public ShardedAVLMap(List<K> splitPoints) {
+        for (int i = 1; i < splitPoints.size(); i++) {
+            if (splitPoints.get(i - 1).compareTo(splitPoints.get(i)) >= 0) {
+                throw new IllegalArgumentException("split points are not in increasing order at index " + i);
+            }
+        }
+        @SuppressWarnings("unchecked")
+        Shard[] s = (Shard[]) Array.newInstance(Shard.class, splitPoints.size() + 1);
+        for (int i = 0; i < s.length; i++) {
+            s[i] = new Shard();
+            s[i].lo = i == 0 ? null : splitPoints.get(i - 1);
+            s[i].hi = i == s.length - 1 ? null : splitPoints.get(i);
+        }
+        shards = s;
+    }
+
+    // Map of Integer keys with the int range cut into shards equal ranges
+    public static <V> ShardedAVLMap<Integer, V> forInts(int shards) {
+        if (shards < 1) throw new IllegalArgumentException("need at least one shard: " + shards);
+        List<Integer> points = new ArrayList<>();
+        long width = (1L << 32) / shards;
+        for (int i = 1; i < shards; i++) points.add((int) (Integer.MIN_VALUE + i * width));
+        return new ShardedAVLMap<>(points);
+    }
+
+    // Shard whose range held key when its boundaries were read; the caller checks it still does
+    private Shard route(K key) {
+        int lo = 0, hi = shards.length - 1; // the answer is in [lo, hi]
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (shards[mid].lo.compareTo(key) <= 0) lo = mid;
+            else hi = mid - 1;
+        }
+        return shards[lo];
+    }
+
+    // Counts one hit in HIT_SAMPLE, which keeps the shared counters out of most operations
+    private void operationDone(Shard s) {
+        int r = ThreadLocalRandom.current().nextInt(REBALANCE_EVERY);
+        if ((r & (HIT_SAMPLE - 1)) == 0) {
+            s.hits.add(HIT_SAMPLE);
+            if (r == 0) rebalance();
+        }
+    }
+
+    public V get(K key) {
+        return read(key, (map, k) -> map.getRacy(k, MAX_STEPS), G_AVL::get);
+    }
+
+    // Whether key is in the map, also when it is mapped to null
+    public boolean containsKey(K key) {
+        return read(key, (map, k) -> map.containsRacy(k, MAX_STEPS), G_AVL::containsKey);
+    }
+
+    /**
+     * Reads key from the shard owning it: first with racy under an optimistic stamp,
+     * then, if a write got in the way, with locked under the read lock
+     */
+    private <R> R read(K key, BiFunction<G_AVL<K, V>, K, R> racy, BiFunction<G_AVL<K, V>, K, R> locked) {
+        while (true) {
+            Shard s = route(key);
+            long stamp = s.lock.tryOptimisticRead();
+            if (stamp != 0) {
+                boolean owns = s.owns(key);
+                R result = owns ? racy.apply(s.map, key) : null;
+                if (s.lock.validate(stamp)) {
+                    if (!owns) continue;
+                    operationDone(s);
+                    return result;
+                }
+            }
+            R result;
+            stamp = s.lock.readLock();
+            try {
+                if (!s.owns(key)) continue;
+                result = locked.apply(s.map, key);
+            } finally {
+                s.lock.unlockRead(stamp);
+            }
+            operationDone(s); // outside the lock, it may rebalance
+            return result;
+        }
+    }
+
+    public void put(K key, V value) {
+        while (true) {
+            Shard s = route(key);
+            long stamp = s.lock.writeLock();
+            try {
+                if (!s.owns(key)) continue;
+                s.map.put(key, value);
+            } finally {
+                s.lock.unlockWrite(stamp);
+            }
+            operationDone(s);
+            return;
+        }
+    }
+
+    public void remove(K key) {
+        while (true) {
+            Shard s = route(key);
+            long stamp = s.lock.writeLock();
+            try {
+                if (!s.owns(key)) continue;
+                s.map.remove(key);
+            } finally {
+                s.lock.unlockWrite(stamp);
+            }
+            operationDone(s);
+            return;
+        }
+    }
+
+    // Smallest key of the shard, or its largest if last, null if it is empty
+    private K edgeKey(Shard s, boolean last) {
+        long stamp = s.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            K key = s.map.edgeKeyRacy(last, MAX_STEPS);
+            if (s.lock.validate(stamp)) return key;
+        }
+        stamp = s.lock.readLock();
+        try {
+            return s.map.edgeKeyRacy(last, Integer.MAX_VALUE);
+        } finally {
+            s.lock.unlockRead(stamp);
+        }
+    }
+
+    // Smallest key, null if the map is empty
+    public K min() {
+        for (Shard s : shards) {
+            K key = edgeKey(s, false);
+            if (key != null) return key;
+        }
+        return null;
+    }
+
+    // Largest key, null if the map is empty
+    public K max() {
+        for (int i = shards.length - 1; i >= 0; i--) {
+            K key = edgeKey(shards[i], true);
+            if (key != null) return key;
+        }
+        return null;
+    }
+
+    public int size() {
+        int n = 0;
+        for (int i : shardSizes()) n += i;
+        return n;
+    }
+
+    public int shards() {
+        return shards.length;
+    }
+
+    // Number of keys in each shard
+    public int[] shardSizes() {
+        int[] sizes = new int[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            Shard s = shards[i];
+            long stamp = s.lock.readLock();
+            try {
+                sizes[i] = s.map.size();
+            } finally {
+                s.lock.unlockRead(stamp);
+            }
+        }
+        return sizes;
+    }
+
+    // Lower boundary of each shard but the first
+    public List<K> splitPoints() {
+        List<K> points = new ArrayList<>();
+        for (int i = 1; i < shards.length; i++) points.add(shards[i].lo);
+        return points;
+    }
+
+    // ---- rebalancing ----
+
+    /**
+     * One rebalancing step, see the class comment; does nothing if another thread is
+     * rebalancing
+     * @return whether a boundary moved
+     */
+    public boolean rebalance() {
+        if (!rebalancing.tryLock()) return false;
+        try {
+            int n = shards.length;
+            if (n < 2) return false;
+            int[] sizes = shardSizes();
+            long[] hits = new long[n];
+            long totalSize = 0, totalHits = 0;
+            for (int i = 0; i < n; i++) {
+                hits[i] = shards[i].hits.sumThenReset();
+                totalSize += sizes[i];
+                totalHits += hits[i];
+            }
+            double[] load = new double[n];
+            double sum = 0;
+            int heaviest = 0;
+            for (int i = 0; i < n; i++) {
+                load[i] = (totalSize == 0 ? 0 : (double) sizes[i] / totalSize) + (totalHits == 0 ? 0 : (double) hits[i] / totalHits);
+                sum += load[i];
+                if (load[i] > load[heaviest]) heaviest = i;
+            }
+            if (load[heaviest] <= SKEW * sum / n || sizes[heaviest] < 2) return false;
+
+            int i = heaviest;
+            int j = i == 0 ? 1 : i == n - 1 ? n - 2 : load[i - 1] <= load[i + 1] ? i - 1 : i + 1;
+            int m = (int) (sizes[i] * (load[i] - load[j]) / (2 * load[i]));
+            m = Math.min(m, sizes[i] - 1); // the shard keeps a key, so a single hot key stays put
+            if (m <= 0) return false;
+            return j > i ? moveRight(i, m) : moveLeft(j, m);
+        } finally {
+            rebalancing.unlock();
+        }
+    }
+
+    // Moves the m largest keys of shard i to shard i + 1
+    private boolean moveRight(int i, int m) {
+        Shard a = shards[i], b = shards[i + 1];
+        long sa = a.lock.writeLock(), sb = b.lock.writeLock();
+        try {
+            int size = a.map.size();
+            if (m >= size) return false;
+            K boundary = a.map.select(size - m);
+            G_AVL<K, V> moved = a.map.split(boundary);
+            moved.join(b.map);
+            b.map = moved;
+            a.hi = boundary;
+            b.lo = boundary;
+            return true;
+        } finally {
+            b.lock.unlockWrite(sb);
+            a.lock.unlockWrite(sa);
+        }
+    }
+
+    // Moves the m smallest keys of shard i + 1 to shard i
+    private boolean moveLeft(int i, int m) {
+        Shard a = shards[i], b = shards[i + 1];
+        long sa = a.lock.writeLock(), sb = b.lock.writeLock();
+        try {
+            if (m >= b.map.size()) return false;
+            K boundary = b.map.select(m);
+            G_AVL<K, V> kept = b.map.split(boundary);
+            a.map.join(b.map);
+            b.map = kept;
+            a.hi = boundary;
+            b.lo = boundary;
+            return true;
+        } finally {
+            b.lock.unlockWrite(sb);
+            a.lock.unlockWrite(sa);
+        }
+    }
+
+    // ---- iteration ----
+
+    // Entries with from <= key < to in key order, a null bound is unbounded
+    public Iterable<Map.Entry<K, V>> entries(K from, K to) {
+        return () -> new RangeIterator(from, to);
+    }
+
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (Map.Entry<K, V> e : entries(null, null)) action.accept(e.getKey(), e.getValue());
+    }
+
+    private class RangeIterator implements Iterator<Map.Entry<K, V>> {
+        private final K to;
+        private K cursor;          // next key to look from, null for the smallest
+        private boolean inclusive; // whether cursor itself is still to be returned
+        private boolean exhausted;
+        private final List<Map.Entry<K, V>> batch = new ArrayList<>();
+        private int next;
+
+        RangeIterator(K from, K to) {
+            this.to = to;
+            cursor = from;
+            inclusive = true;
+            exhausted = from != null && to != null && from.compareTo(to) >= 0;
+        }
+
+        public boolean hasNext() {
+            while (next == batch.size() && !exhausted) fetch();
+            return next < batch.size();
+        }
+
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return batch.get(next++);
+        }
+
+        // Copies the next entries of the shard owning cursor, or moves on to the next shard
+        private void fetch() {
+            batch.clear();
+            next = 0;
+            Shard s = cursor == null ? shards[0] : route(cursor);
+            long stamp = s.lock.readLock();
+            try {
+                if (cursor != null && !s.owns(cursor)) return; // a boundary moved, route again
+                K hi = s.hi;
+                boolean lastShard = hi == null || (to != null && to.compareTo(hi) <= 0);
+                K end = lastShard ? to : hi;
+                for (Map.Entry<K, V> e : view(s.map, cursor, end)) {
+                    if (!inclusive && e.getKey().compareTo(cursor) == 0) continue;
+                    if (batch.size() == ITERATION_BATCH) break;
+                    batch.add(new AbstractMap.SimpleImmutableEntry<>(e.getKey(), e.getValue()));
+                }
+                if (batch.size() == ITERATION_BATCH) {
+                    cursor = batch.get(batch.size() - 1).getKey();
+                    inclusive = false;
+                } else if (lastShard) {
+                    exhausted = true;
+                } else {
+                    cursor = hi;
+                    inclusive = true;
+                }
+            } finally {
+                s.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    private static <K extends Comparable<K>, V> Iterable<Map.Entry<K, V>> view(G_AVL<K, V> map, K from, K to) {
+        if (from == null) return to == null ? map.getEntries() : map.headMap(to);
+        return to == null ? map.tailMap(from) : map.subMap(from, to);
+    }
+
+    public static void main(String[] args) {
+        ShardedAVLMap<Integer, String> map = ShardedAVLMap.forInts(4);
+        for (int k = 0; k < 1000; k++) map.put(k, "v" + k); // all in one shard of the int range
+        System.out.println("sizes " + Arrays.toString(map.shardSizes()) + ", split points " + map.splitPoints());
+        while (map.rebalance()) {
+            System.out.println("sizes " + Arrays.toString(map.shardSizes()) + ", split points " + map.splitPoints());
+        }
+        System.out.println("min " + map.min() + ", max " + map.max() + ", size " + map.size() + ", get(500) " + map.get(500));
+        int n = 0;
+        for (Map.Entry<Integer, String> e : map.entries(250, 750)) n++;
+        System.out.println("keys in [250, 750): " + n);
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-time throughput run shared by the multi-threaded benchmarks
+ *
+ * The threads are released together by a latch and run the operation in batches of
+ * BATCH, checking the deadline between batches only, so reading the clock stays out
+ * of the measured loop. The result counts completed batches over the elapsed time.
+ */
+final class Throughput {
+    static final int BATCH = 1024;
+
+    interface Operation {
+        void run(ThreadLocalRandom rnd);
+    }
+
+    private Throughput() {
+    }
+
+    // Operations per second of threads running op for the given number of seconds
+    static double run(int threads, int seconds, Operation op) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        Thread[] workers = new Thread[threads];
+        for (int w = 0; w < threads; w++) {
+            workers[w] = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long done = 0;
+                while (true) {
+                    for (int i = 0; i < BATCH; i++) op.run(rnd);
+                    done += BATCH;
+                    if (System.nanoTime() >= deadline[0]) break;
+                }
+                ops.add(done);
+            });
+            workers[w].start();
+        }
+        long begin = System.nanoTime();
+        deadline[0] = begin + seconds * 1_000_000_000L;
+        start.countDown();
+        for (Thread w : workers) w.join();
+        return ops.sum() / ((System.nanoTime() - begin) / 1e9);
+    }
+}
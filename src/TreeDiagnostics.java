@@ -0,0 +1,264 @@
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * Structural checks of a search tree in a single post-order pass
+ *
+ * One walk computes the height, the number of nodes and keys, the number of nodes at
+ * every depth, whether the keys are in search tree order and whether the tree is
+ * balanced: at every node the heights of the child subtrees differ by at most
+ * maxHeightSkew (1 for AVL-like binary trees, 0 for B-Trees, whose leaves all sit at
+ * the same depth). Order is checked from the smallest and largest key of every
+ * subtree, so no traversal is repeated and the cost is O(n).
+ *
+ * The walk keeps its own stack, so degenerate trees do not overflow the call stack.
+ * In parallel mode the top of the tree is split into a bounded number of fork-join
+ * tasks, a few per worker thread whatever the fan-out, each with its own depth
+ * histogram, merged when the tasks are joined.
+ *
+ * Trees plug in through an Adapter over their node class, see diagnose() in
+ * BTree, G_AVL and G_BST.
+ */
+public class TreeDiagnostics {
+
+    /**
+     * View of a tree whose nodes hold keys(node) sorted keys and, unless they are leaves,
+     * keys(node) + 1 children; child i holds the keys between key i-1 and key i
+     * A binary tree node has one key and two children, either of which may be null.
+     */
+    public interface Adapter<N> {
+        N root();
+
+        int keys(N node);
+
+        // number of child slots, 0 for a leaf
+        int children(N node);
+
+        // may be null in a binary tree
+        N child(N node, int i);
+
+        // compares key i of node a with key j of node b
+        int compare(N a, int i, N b, int j);
+
+        // allowed difference between the heights of sibling subtrees
+        int maxHeightSkew();
+
+        // whether equal keys may repeat, in a node and across separators (B-Tree inserts allow them)
+        default boolean duplicatesAllowed() {
+            return false;
+        }
+
+        // extra invariants of a single node (key count bounds, cached heights, ...)
+        default boolean checkNode(N node, boolean isRoot) {
+            return true;
+        }
+    }
+
+    /**
+     * Result of a diagnostics pass
+     */
+    public static class Report {
+        public final int height;        // levels of nodes, 0 for an empty tree
+        public final long nodes;
+        public final long keys;
+        public final boolean valid;     // keys in search tree order (non-strict if duplicatesAllowed) and every checkNode passed
+        public final boolean balanced;  // sibling heights within maxHeightSkew everywhere
+        private final long[] depthHistogram;
+
+        Report(int height, long nodes, long keys, boolean valid, boolean balanced, long[] depthHistogram) {
+            this.height = height;
+            this.nodes = nodes;
+            this.keys = keys;
+            this.valid = valid;
+            this.balanced = balanced;
+            this.depthHistogram = depthHistogram;
+        }
+
+        // Number of nodes at each depth, the root being at depth 0
+        public long[] depthHistogram() {
+            return depthHistogram.clone();
+        }
+
+        public double averageDepth() {
+            long sum = 0;
+            for (int d = 0; d < depthHistogram.length; d++) sum += d * depthHistogram[d];
+            return nodes == 0 ? 0 : (double) sum / nodes;
+        }
+
+        public String toString() {
+            return "height=" + height + " nodes=" + nodes + " keys=" + keys + " valid=" + valid
+                    + " balanced=" + balanced + " avgDepth=" + String.format("%.2f", averageDepth())
+                    + " depths=" + Arrays.toString(depthHistogram);
+        }
+    }
+
+    private static final int TASKS_PER_THREAD = 8; // task budget of a parallel walk, per worker thread
+
+    public static <N> Report run(Adapter<N> tree) {
+        return run(tree, false);
+    }
+
+    public static <N> Report run(Adapter<N> tree, boolean parallel) {
+        N root = tree.root();
+        if (root == null) return new Report(0, 0, 0, true, true, new long[0]);
+        Walk<N> walk = new Walk<>(tree, root, 0,
+                parallel ? TASKS_PER_THREAD * ForkJoinPool.getCommonPoolParallelism() : 0);
+        Summary<N> s = parallel ? ForkJoinPool.commonPool().invoke(walk) : walk.compute();
+        return new Report(s.height, s.nodes, s.keys, s.valid, s.balanced,
+                Arrays.copyOf(walk.histogram, s.height));
+    }
+
+    // Summary of a subtree; while its children are being walked it also holds the walk state
+    private static final class Summary<N> {
+        final N node;
+        final int depth;
+        int next;               // next child to fold in
+        int height;
+        int minChildHeight = Integer.MAX_VALUE;
+        long nodes = 1;
+        long keys;
+        boolean valid = true;
+        boolean balanced = true;
+        N minNode, maxNode;     // smallest and largest key of the subtree
+        int minIndex, maxIndex;
+
+        Summary(Adapter<N> tree, N node, int depth) {
+            this.node = node;
+            this.depth = depth;
+            int k = tree.keys(node);
+            keys = k;
+            valid = tree.checkNode(node, depth == 0);
+            for (int i = 0; i + 1 < k && valid; i++) valid = inOrder(tree, node, i, node, i + 1);
+            minNode = maxNode = node;
+            minIndex = 0;
+            maxIndex = k - 1;
+        }
+
+        // Folds in child i of node, s is null when the child is absent
+        void add(Adapter<N> tree, int i, Summary<N> s) {
+            int h = s == null ? 0 : s.height;
+            height = Math.max(height, h);
+            minChildHeight = Math.min(minChildHeight, h);
+            if (s == null) return;
+            nodes += s.nodes;
+            keys += s.keys;
+            valid &= s.valid;
+            balanced &= s.balanced;
+            int k = tree.keys(node);
+            if (i > 0 && !inOrder(tree, node, i - 1, s.minNode, s.minIndex)) valid = false;
+            if (i < k && !inOrder(tree, s.maxNode, s.maxIndex, node, i)) valid = false;
+            if (i == 0) {
+                minNode = s.minNode;
+                minIndex = s.minIndex;
+            }
+            if (i == tree.children(node) - 1) {
+                maxNode = s.maxNode;
+                maxIndex = s.maxIndex;
+            }
+        }
+
+        // Whether key i of a may come before key j of b
+        private static <N> boolean inOrder(Adapter<N> tree, N a, int i, N b, int j) {
+            int cmp = tree.compare(a, i, b, j);
+            return tree.duplicatesAllowed() ? cmp <= 0 : cmp < 0;
+        }
+
+        Summary<N> finish(Adapter<N> tree) {
+            if (next > 0 && height - minChildHeight > tree.maxHeightSkew()) balanced = false;
+            height++;
+            return this;
+        }
+    }
+
+    private static final class Walk<N> extends RecursiveTask<Summary<N>> {
+        private static final long serialVersionUID = 1L;
+
+        final Adapter<N> tree;
+        final N start;
+        final int depth;
+        final int budget; // tasks the subtree may still be split into, shared evenly by the children
+        long[] histogram = new long[16];
+
+        Walk(Adapter<N> tree, N start, int depth, int budget) {
+            this.tree = tree;
+            this.start = start;
+            this.depth = depth;
+            this.budget = budget;
+        }
+
+        private void count(int d) {
+            if (d >= histogram.length) histogram = Arrays.copyOf(histogram, Math.max(2 * histogram.length, d + 1));
+            histogram[d]++;
+        }
+
+        protected Summary<N> compute() {
+            int c = tree.children(start);
+            return c > 1 && budget / c > 1 ? walkChildrenAsTasks(c) : walk();
+        }
+
+        // Walks the c children of start as separate tasks
+        private Summary<N> walkChildrenAsTasks(int c) {
+            Summary<N> s = new Summary<>(tree, start, depth);
+            count(depth);
+            Walk<N>[] tasks = newTasks(c);
+            for (int i = 0; i < c; i++) {
+                N child = tree.child(start, i);
+                if (child != null) tasks[i] = new Walk<>(tree, child, depth + 1, budget / c);
+            }
+            for (int i = 1; i < c; i++) if (tasks[i] != null) tasks[i].fork();
+            Summary<N> first = tasks.length > 0 && tasks[0] != null ? tasks[0].compute() : null;
+            for (int i = 0; i < c; i++) {
+                Summary<N> r = i == 0 ? first : tasks[i] == null ? null : tasks[i].join();
+                s.add(tree, i, r);
+                if (tasks[i] != null) merge(tasks[i].histogram);
+            }
+            s.next = c;
+            return s.finish(tree);
+        }
+
+        private void merge(long[] other) {
+            if (other.length > histogram.length) histogram = Arrays.copyOf(histogram, other.length);
+            for (int d = 0; d < other.length; d++) histogram[d] += other[d];
+        }
+
+        // Iterative post-order walk of the subtree of start
+        private Summary<N> walk() {
+            Summary<N>[] stack = newStack(16);
+            int top = 0;
+            stack[top++] = new Summary<>(tree, start, depth);
+            count(depth);
+            while (true) {
+                Summary<N> s = stack[top - 1];
+                if (s.next < tree.children(s.node)) {
+                    N child = tree.child(s.node, s.next);
+                    if (child == null) {
+                        s.add(tree, s.next++, null);
+                    } else {
+                        if (top == stack.length) stack = Arrays.copyOf(stack, 2 * top);
+                        stack[top++] = new Summary<>(tree, child, s.depth + 1);
+                        count(s.depth + 1);
+                    }
+                    continue;
+                }
+                s.finish(tree);
+                stack[--top] = null;
+                if (top == 0) return s;
+                Summary<N> parent = stack[top - 1];
+                parent.add(tree, parent.next++, s);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <N> Summary<N>[] newStack(int n) {
+            return (Summary<N>[]) Array.newInstance(Summary.class, n);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <N> Walk<N>[] newTasks(int n) {
+            return (Walk<N>[]) Array.newInstance(Walk.class, n);
+        }
+    }
+}
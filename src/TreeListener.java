@@ -0,0 +1,56 @@
+/**
+ * Receives structural events from BTree, G_AVL and G_BST.
+ *
+ * A tree only calls its listener when one has been set with setListener, so a tree
+ * without a listener pays a single null check per event site. Every method does
+ * nothing by default, implementations override only the events they care about.
+ *
+ * See TreeMetrics for counters (snapshot / JMX) and PrintingTreeListener for debug output.
+ */
+public interface TreeListener {
+
+    /**
+     * A full B-Tree node is about to be split
+     * @param node - the node being split (its toString lists its keys)
+     */
+    default void onSplit(Object node) {}
+
+    default void onRotateLeft() {}
+
+    default void onRotateRight() {}
+
+    /**
+     * Key comparisons were performed
+     * @param count - number of comparisons since the last report
+     */
+    default void onCompare(int count) {}
+
+    /**
+     * A lookup (contains / get) finished
+     * @param nodesVisited - number of nodes visited on the way down
+     */
+    default void onLookup(int nodesVisited) {}
+
+    /**
+     * The height of the whole tree changed after an insert or a removal
+     */
+    default void onHeightChange(int oldHeight, int newHeight) {}
+
+    /**
+     * Listener that forwards every event to this listener and then to next
+     */
+    default TreeListener andThen(TreeListener next) {
+        TreeListener first = this;
+        return new TreeListener() {
+            public void onSplit(Object node) { first.onSplit(node); next.onSplit(node); }
+            public void onRotateLeft() { first.onRotateLeft(); next.onRotateLeft(); }
+            public void onRotateRight() { first.onRotateRight(); next.onRotateRight(); }
+            public void onCompare(int count) { first.onCompare(count); next.onCompare(count); }
+            public void onLookup(int nodesVisited) { first.onLookup(nodesVisited); next.onLookup(nodesVisited); }
+            public void onHeightChange(int oldHeight, int newHeight) {
+                first.onHeightChange(oldHeight, newHeight);
+                next.onHeightChange(oldHeight, newHeight);
+            }
+        };
+    }
+}
@@ -0,0 +1,116 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * TreeListener that counts events.
+ *
+ * Counters are LongAdders, so one instance can be shared by trees used from several
+ * threads. Read them with snapshot(), or expose them over JMX with register(name).
+ *
+ * Usage:
+ *   TreeMetrics metrics = new TreeMetrics();
+ *   tree.setListener(metrics);
+ *   ...
+ *   System.out.println(metrics.snapshot());
+ */
+public class TreeMetrics implements TreeListener, TreeMetricsMXBean {
+
+    private final LongAdder splits = new LongAdder();
+    private final LongAdder rotateLeft = new LongAdder();
+    private final LongAdder rotateRight = new LongAdder();
+    private final LongAdder comparisons = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder nodesVisited = new LongAdder();
+    private final LongAdder heightChanges = new LongAdder();
+
+    /**
+     * Point in time copy of the counters
+     */
+    public static class Snapshot {
+        public final long splits;
+        public final long rotateLeft;
+        public final long rotateRight;
+        public final long comparisons;
+        public final long lookups;
+        public final long nodesVisited;
+        public final long heightChanges;
+
+        Snapshot(long splits, long rotateLeft, long rotateRight, long comparisons,
+                 long lookups, long nodesVisited, long heightChanges) {
+            this.splits = splits;
+            this.rotateLeft = rotateLeft;
+            this.rotateRight = rotateRight;
+            this.comparisons = comparisons;
+            this.lookups = lookups;
+            this.nodesVisited = nodesVisited;
+            this.heightChanges = heightChanges;
+        }
+
+        public double averageNodesVisited() {
+            return lookups == 0 ? 0 : (double) nodesVisited / lookups;
+        }
+
+        public String toString() {
+            return "splits=" + splits + " rotations(L/R)=" + rotateLeft + "/" + rotateRight
+                    + " comparisons=" + comparisons + " lookups=" + lookups
+                    + " avgNodesVisited=" + String.format("%.2f", averageNodesVisited())
+                    + " heightChanges=" + heightChanges;
+        }
+    }
+
+    public void onSplit(Object node) { splits.increment(); }
+
+    public void onRotateLeft() { rotateLeft.increment(); }
+
+    public void onRotateRight() { rotateRight.increment(); }
+
+    public void onCompare(int count) { comparisons.add(count); }
+
+    public void onLookup(int visited) {
+        lookups.increment();
+        nodesVisited.add(visited);
+    }
+
+    public void onHeightChange(int oldHeight, int newHeight) { heightChanges.increment(); }
+
+    public Snapshot snapshot() {
+        return new Snapshot(splits.sum(), rotateLeft.sum(), rotateRight.sum(), comparisons.sum(),
+                lookups.sum(), nodesVisited.sum(), heightChanges.sum());
+    }
+
+    /**
+     * Registers these counters with the platform MBean server
+     * under "trees:type=TreeMetrics,name=<name>"
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("trees:type=TreeMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public long getSplits() { return splits.sum(); }
+
+    public long getRotations() { return rotateLeft.sum() + rotateRight.sum(); }
+
+    public long getComparisons() { return comparisons.sum(); }
+
+    public long getLookups() { return lookups.sum(); }
+
+    public long getNodesVisited() { return nodesVisited.sum(); }
+
+    public double getAverageNodesVisited() { return snapshot().averageNodesVisited(); }
+
+    public long getHeightChanges() { return heightChanges.sum(); }
+
+    public void reset() {
+        splits.reset();
+        rotateLeft.reset();
+        rotateRight.reset();
+        comparisons.reset();
+        lookups.reset();
+        nodesVisited.reset();
+        heightChanges.reset();
+    }
+}
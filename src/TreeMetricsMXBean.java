@@ -0,0 +1,13 @@
+/**
+ * JMX view of a TreeMetrics instance, see TreeMetrics.register
+ */
+public interface TreeMetricsMXBean {
+    long getSplits();
+    long getRotations();
+    long getComparisons();
+    long getLookups();
+    long getNodesVisited();
+    double getAverageNodesVisited();
+    long getHeightChanges();
+    void reset();
+}
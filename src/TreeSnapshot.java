@@ -0,0 +1,279 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+
+/**
+ * Binary snapshot format shared by BTree, G_AVL and G_BST (see their save / load)
+ *
+ * A snapshot holds the entries of a tree in increasing key order, each key followed by
+ * its value, encoded by a Codec per type. Writing streams the entries of the live tree
+ * through a 64 KiB buffer into a temporary file, which is forced to disk and renamed
+ * over the target, and the rename is forced in turn by forcing the directory, so a
+ * crash leaves either the old or the new snapshot. Reading maps
+ * the file, checks it, and decodes the entries straight from the mapping into arrays,
+ * from which the trees rebuild a balanced structure in linear time.
+ *
+ * File layout (big endian):
+ *   magic "TSNP" | version | entry count (long) | key codec name | value codec name |
+ *   entries... | CRC32 of the entries
+ * Codec names are stored as a length (short) and UTF-8 bytes; loading with codecs of
+ * other names is refused.
+ */
+public class TreeSnapshot {
+
+    private static final int MAGIC = 0x54534e50; // "TSNP"
+    private static final int VERSION = 1;
+    private static final int COUNT_OFFSET = 8;
+
+    /**
+     * Encoding of keys or values of type T
+     */
+    public interface Codec<T> {
+        // identifies the encoding in the file header
+        String name();
+
+        // number of bytes write will put for value
+        int size(T value);
+
+        void write(ByteBuffer out, T value);
+
+        T read(ByteBuffer in);
+    }
+
+    public static final Codec<Integer> INT = new Codec<Integer>() {
+        public String name() { return "int"; }
+        public int size(Integer value) { return 4; }
+        public void write(ByteBuffer out, Integer value) { out.putInt(value); }
+        public Integer read(ByteBuffer in) { return in.getInt(); }
+    };
+
+    public static final Codec<Long> LONG = new Codec<Long>() {
+        public String name() { return "long"; }
+        public int size(Long value) { return 8; }
+        public void write(ByteBuffer out, Long value) { out.putLong(value); }
+        public Long read(ByteBuffer in) { return in.getLong(); }
+    };
+
+    public static final Codec<Double> DOUBLE = new Codec<Double>() {
+        public String name() { return "double"; }
+        public int size(Double value) { return 8; }
+        public void write(ByteBuffer out, Double value) { out.putDouble(value); }
+        public Double read(ByteBuffer in) { return in.getDouble(); }
+    };
+
+    // UTF-8 bytes after an int length, -1 for null
+    public static final Codec<String> STRING = new Codec<String>() {
+        public String name() { return "utf8"; }
+
+        public int size(String value) {
+            return 4 + (value == null ? 0 : utf8Length(value));
+        }
+
+        public void write(ByteBuffer out, String value) {
+            if (value == null) {
+                out.putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.putInt(bytes.length).put(bytes);
+        }
+
+        public String read(ByteBuffer in) {
+            int n = in.getInt();
+            if (n < 0) return null;
+            byte[] bytes = new byte[n];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    // Writes nothing and reads null, for sets (BTree)
+    public static final Codec<Void> NONE = new Codec<Void>() {
+        public String name() { return "none"; }
+        public int size(Void value) { return 0; }
+        public void write(ByteBuffer out, Void value) { }
+        public Void read(ByteBuffer in) { return null; }
+    };
+
+    private static int utf8Length(String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) n += 1;
+            else if (c < 0x800) n += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                n += 4;
+                i++;
+            } else n += 3;
+        }
+        return n;
+    }
+
+    /**
+     * Entries decoded from a snapshot, in increasing key order
+     */
+    static class Entries {
+        final Object[] keys;
+        final Object[] values;
+        final int count;
+
+        Entries(Object[] keys, Object[] values, int count) {
+            this.keys = keys;
+            this.values = values;
+            this.count = count;
+        }
+    }
+
+    // ---- writing ----
+
+    /**
+     * Writes a snapshot of the entries that forEach passes in increasing key order
+     */
+    static <K, V> void write(Path file, Codec<K> keyCodec, Codec<V> valueCodec,
+                             Consumer<BiConsumer<K, V>> forEach) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = header(keyCodec, valueCodec);
+            while (header.hasRemaining()) out.write(header);
+
+            ByteBuffer buf = ByteBuffer.allocateDirect(64 * 1024);
+            CRC32 sum = new CRC32();
+            long[] count = {0};
+            try {
+                forEach.accept((k, v) -> {
+                    int need = keyCodec.size(k) + valueCodec.size(v);
+                    if (buf.remaining() < need) drain(out, buf, sum);
+                    if (buf.remaining() < need) { // larger than the buffer, written on its own
+                        ByteBuffer big = ByteBuffer.allocate(need);
+                        keyCodec.write(big, k);
+                        valueCodec.write(big, v);
+                        drain(out, big, sum);
+                    } else {
+                        keyCodec.write(buf, k);
+                        valueCodec.write(buf, v);
+                    }
+                    count[0]++;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            drain(out, buf, sum);
+            buf.putInt((int) sum.getValue()).flip();
+            while (buf.hasRemaining()) out.write(buf);
+
+            ByteBuffer c = ByteBuffer.allocate(8).putLong(count[0]).flip();
+            while (c.hasRemaining()) out.write(c, COUNT_OFFSET + c.position());
+            out.force(true);
+        }
+        replace(tmp, file);
+    }
+
+    /**
+     * Renames tmp over target atomically and forces the rename to disk
+     * The rename is a change of the directory, which is only durable once the directory
+     * itself is forced; until then a crash may bring back the old target.
+     */
+    static void replace(Path tmp, Path target) throws IOException {
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path dir = target.toAbsolutePath().getParent();
+        try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+            d.force(true);
+        }
+    }
+
+    private static ByteBuffer header(Codec<?> keyCodec, Codec<?> valueCodec) {
+        byte[] k = keyCodec.name().getBytes(StandardCharsets.UTF_8);
+        byte[] v = valueCodec.name().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer h = ByteBuffer.allocate(16 + 2 + k.length + 2 + v.length);
+        h.putInt(MAGIC).putInt(VERSION).putLong(0); // count is patched once known
+        h.putShort((short) k.length).put(k).putShort((short) v.length).put(v);
+        return h.flip();
+    }
+
+    // Writes the bytes in buf to out and adds them to the checksum
+    private static void drain(FileChannel out, ByteBuffer buf, CRC32 sum) {
+        try {
+            buf.flip();
+            sum.update(buf.duplicate());
+            while (buf.hasRemaining()) out.write(buf);
+            buf.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ---- reading ----
+
+    /**
+     * Maps file, checks its header and checksum, and returns its entries positioned at
+     * the first one; entryCount receives the number of entries
+     */
+    static ByteBuffer open(Path file, Codec<?> keyCodec, Codec<?> valueCodec, long[] entryCount) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size > Integer.MAX_VALUE) throw new IOException(file + ": snapshots over 2 GiB are not supported");
+            map = in.map(FileChannel.MapMode.READ_ONLY, 0, size); // stays valid after the channel is closed
+        }
+        try {
+            if (map.remaining() < 24 || map.getInt() != MAGIC) throw new IOException(file + ": not a tree snapshot");
+            int version = map.getInt();
+            if (version != VERSION) throw new IOException(file + ": unsupported snapshot version " + version);
+            entryCount[0] = map.getLong();
+            String k = readName(map), v = readName(map);
+            if (!k.equals(keyCodec.name()) || !v.equals(valueCodec.name())) {
+                throw new IOException(file + ": snapshot written with codecs " + k + "/" + v + ", not "
+                        + keyCodec.name() + "/" + valueCodec.name());
+            }
+            ByteBuffer body = map.slice().limit(map.remaining() - 4);
+            CRC32 sum = new CRC32();
+            sum.update(body.duplicate());
+            if (map.getInt(map.limit() - 4) != (int) sum.getValue()) {
+                throw new IOException(file + ": snapshot checksum mismatch");
+            }
+            return body;
+        } catch (RuntimeException e) { // BufferUnderflowException and the like on a truncated file
+            throw new IOException(file + ": corrupt snapshot", e);
+        }
+    }
+
+    private static String readName(ByteBuffer in) {
+        byte[] b = new byte[in.getShort()];
+        in.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads every entry of file into arrays
+     */
+    static <K, V> Entries read(Path file, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        long[] count = new long[1];
+        ByteBuffer body = open(file, keyCodec, valueCodec, count);
+        if (count[0] > Integer.MAX_VALUE - 8) throw new IOException(file + ": too many entries");
+        int n = (int) count[0];
+        Object[] keys = new Object[n];
+        Object[] values = new Object[n];
+        try {
+            for (int i = 0; i < n; i++) {
+                keys[i] = keyCodec.read(body);
+                values[i] = valueCodec.read(body);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException(file + ": corrupt snapshot", e);
+        }
+        if (body.hasRemaining()) throw new IOException(file + ": trailing bytes after the last entry");
+        return new Entries(keys, values, n);
+    }
+}